@@ -0,0 +1,87 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  Assembler.java
+  Runs Pass1 and Pass2 in one process on in-memory tables, without IC.txt/SYMTAB.txt/LITTAB.txt.
+
+  Usage:
+    javac Assembler.java Pass1.java Pass2.java BinaryIC.java
+    java Assembler asm_input.txt
+    java Assembler --object prog.obj asm_input.txt   (also writes the loadable image, see ObjectFile.java)
+
+  From code:
+    Assembler.Result r = new Assembler().assemble(new StringReader(source));
+    r.machineCode   -> same lines as MACHINECODE.txt
+
+  Every call works on its own Pass1/Pass2 instances, so one Assembler can be used from several threads.
+*/
+
+public class Assembler {
+
+    static class Result {
+        final Pass1 pass1;              // symbol/literal tables and IC of this assembly
+        final Pass2 pass2;
+        final List<String> machineCode;
+
+        Result(Pass1 pass1, Pass2 pass2){
+            this.pass1 = pass1;
+            this.pass2 = pass2;
+            this.machineCode = pass2.machine;
+        }
+
+        List<String> intermediateCode(){ return pass1.IC; }
+    }
+
+    Result assemble(Reader source) throws IOException {
+        return assemble(source, "<input>");
+    }
+
+    // name: the source as diagnostics call it (see Diagnostics.java; errors are in pass1.diag)
+    Result assemble(Reader source, String name) throws IOException {
+        Pass1 p1 = new Pass1();
+        p1.file = name;
+        p1.run(new BufferedReader(source));
+        return pass2(p1);
+    }
+
+    // Machine code for a finished Pass1, straight from its in-memory tables and IC
+    Result pass2(Pass1 p1){
+        Pass2 p2 = new Pass2();
+        p2.useTables(p1);
+        p2.image = p1.image;
+        p2.diag = p1.diag;
+        p2.file = p1.file + " (IC)";
+        for(String ic : p1.IC) p2.translate(ic);
+        return new Result(p1, p2);
+    }
+
+    Result assemble(String file) throws IOException {
+        try(Reader r = new FileReader(file)){
+            return assemble(r, file);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String object = null;
+        if(args.length>1 && args[0].equals("--object")){
+            object = args[1];
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
+        if(args.length==0){
+            System.out.println("Usage: java Assembler [--object file] <assembly_input_file>");
+            return;
+        }
+        Pass1 p1 = new Pass1();
+        if(object != null) p1.image = new ObjectFile.Image();
+        p1.file = args[0];
+        try(BufferedReader br = new BufferedReader(new FileReader(args[0]))){
+            p1.run(br);
+        }
+        Result r = new Assembler().pass2(p1);
+        for(String s : r.machineCode) System.out.println(s);
+        if(object != null) ObjectFile.write(object, p1, p1.image);
+        p1.diag.print(System.err);
+        if(p1.diag.errors() > 0) System.exit(1);
+    }
+}
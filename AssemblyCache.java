@@ -0,0 +1,240 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+  AssemblyCache.java
+  On-disk cache of assembler outputs, content-addressed: the key is the SHA-256 of the
+  assembler VERSION, the opcode table (every OpTable entry, so --optab extensions count)
+  and the source bytes. A hit restores IC, SYMTAB, LITTAB, POOLTAB and MACHINECODE
+  without running either pass. Sources with errors are not stored, so every run reports
+  their diagnostics again.
+
+  Usage:
+    javac *.java
+    java AssemblyCache [-c cachedir] [-m maxMB] [--optab file] source.asm   (outputs in the current directory)
+    java BatchAssembler -c cachedir ...   (see BatchAssembler.java)
+
+  One file per entry, <key>.ach: magic "ACH1", part count, then per part its name (UTF),
+  byte length and bytes. Safe for several threads and processes on one directory:
+    - an entry is written to a temporary file and renamed into place, so readers see a
+      whole entry or none; two writers of one key write the same bytes
+    - a hit touches the entry's modification time; when the directory grows past maxBytes
+      the least recently used entries are deleted down to 90% of it
+    - an entry that disappears (evicted by someone else) or does not parse is a miss
+*/
+
+public class AssemblyCache {
+    static final String VERSION = "asm-2"; // bump whenever Pass1/Pass2 output changes
+    static final int MAGIC = 0x41434831;   // "ACH1"
+    static final String SUFFIX = ".ach";
+    static final String[] OUTPUTS = {"IC.txt", "SYMTAB.txt", "LITTAB.txt", "POOLTAB.txt", "MACHINECODE.txt"};
+
+    final Path dir;
+    final long maxBytes;
+    long size = -1; // bytes in dir as of the last scan plus what was stored since, -1 = not scanned
+
+    final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), stores = new AtomicLong(),
+            evictions = new AtomicLong(), hitNanos = new AtomicLong(), missNanos = new AtomicLong();
+
+    // Outputs of one source, by name in OUTPUTS
+    static class Outputs {
+        final boolean hit;
+        final Map<String, byte[]> files;
+        final Diagnostics diag; // of the assembly; null on a hit (only clean sources are stored)
+
+        Outputs(boolean hit, Map<String, byte[]> files, Diagnostics diag){
+            this.hit = hit;
+            this.files = files;
+            this.diag = diag;
+        }
+
+        int lines(String name){
+            int n = 0;
+            for(byte b : files.get(name)) if(b == '\n') n++;
+            return n;
+        }
+    }
+
+    AssemblyCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+    }
+
+    static String key(byte[] source){
+        MessageDigest md;
+        try{
+            md = MessageDigest.getInstance("SHA-256");
+        } catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+        md.update(VERSION.getBytes(StandardCharsets.UTF_8));
+        md.update((byte)0);
+        for(int id=0;id<OpTable.size;id++){
+            md.update(OpTable.name[id].getBytes(StandardCharsets.UTF_8));
+            md.update(new byte[]{0, OpTable.cls[id], (byte)OpTable.opcode[id], 0});
+        }
+        md.update(source);
+        StringBuilder sb = new StringBuilder(64);
+        for(byte b : md.digest()) sb.append(Character.forDigit((b>>4)&15, 16)).append(Character.forDigit(b&15, 16));
+        return sb.toString();
+    }
+
+    Path entry(String key){ return dir.resolve(key + SUFFIX); }
+
+    // null on a miss
+    Map<String, byte[]> get(String key){
+        Path f = entry(key);
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(f), 1<<16))){
+            if(in.readInt() != MAGIC) throw new IOException("bad magic");
+            int parts = in.readInt();
+            for(int i=0;i<parts;i++){
+                String name = in.readUTF();
+                byte[] b = new byte[in.readInt()];
+                in.readFully(b);
+                files.put(name, b);
+            }
+        } catch(NoSuchFileException e){
+            return null;
+        } catch(IOException e){
+            try{ Files.deleteIfExists(f); } catch(IOException ignored){} // truncated or foreign file
+            return null;
+        }
+        try{
+            Files.setLastModifiedTime(f, FileTime.fromMillis(System.currentTimeMillis())); // LRU order
+        } catch(IOException ignored){} // evicted meanwhile; the bytes are already read
+        return files;
+    }
+
+    void put(String key, Map<String, byte[]> files) throws IOException {
+        Path tmp = Files.createTempFile(dir, key, ".part");
+        try{
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1<<16))){
+                out.writeInt(MAGIC);
+                out.writeInt(files.size());
+                for(Map.Entry<String, byte[]> e : files.entrySet()){
+                    out.writeUTF(e.getKey());
+                    out.writeInt(e.getValue().length);
+                    out.write(e.getValue());
+                }
+            }
+            long bytes = Files.size(tmp);
+            try{
+                Files.move(tmp, entry(key), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch(AtomicMoveNotSupportedException e){
+                Files.move(tmp, entry(key), StandardCopyOption.REPLACE_EXISTING);
+            }
+            stores.incrementAndGet();
+            added(bytes);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    synchronized void added(long bytes) throws IOException {
+        if(size < 0) size = scan(null);
+        size += bytes;
+        if(size > maxBytes) evict();
+    }
+
+    // bytes of all entries; collects them (oldest first) when list is given
+    long scan(List<Path> list) throws IOException {
+        long total = 0;
+        List<Object[]> found = new ArrayList<>(); // {path, mtime}
+        try(DirectoryStream<Path> ds = Files.newDirectoryStream(dir, "*" + SUFFIX)){
+            for(Path p : ds){
+                try{
+                    total += Files.size(p);
+                    if(list != null) found.add(new Object[]{p, Files.getLastModifiedTime(p).toMillis()});
+                } catch(NoSuchFileException e){
+                    // removed by another process while listing
+                }
+            }
+        }
+        if(list != null){
+            found.sort((x, y) -> Long.compare((Long)x[1], (Long)y[1]));
+            for(Object[] e : found) list.add((Path)e[0]);
+        }
+        return total;
+    }
+
+    // deletes least recently used entries until the directory is at 90% of maxBytes
+    void evict() throws IOException {
+        List<Path> lru = new ArrayList<>();
+        size = scan(lru);
+        long target = maxBytes / 10 * 9;
+        for(Path p : lru){
+            if(size <= target) break;
+            try{
+                long b = Files.size(p);
+                if(Files.deleteIfExists(p)){
+                    size -= b;
+                    evictions.incrementAndGet();
+                }
+            } catch(NoSuchFileException e){
+                // already gone
+            }
+        }
+    }
+
+    // Assembles source to prefix + OUTPUTS, from the cache when the same source was seen before
+    Outputs assemble(Path source, String prefix) throws IOException {
+        long t0 = System.nanoTime();
+        byte[] src = Files.readAllBytes(source);
+        String key = key(src);
+        Map<String, byte[]> files = get(key);
+        if(files != null && files.keySet().containsAll(Arrays.asList(OUTPUTS))){
+            for(String name : OUTPUTS) Files.write(Paths.get(prefix + name), files.get(name));
+            hits.incrementAndGet();
+            hitNanos.addAndGet(System.nanoTime() - t0);
+            return new Outputs(true, files, null);
+        }
+        // same decoding as Assembler.assemble(file), which reads through a FileReader
+        Assembler.Result res = new Assembler().assemble(new InputStreamReader(new ByteArrayInputStream(src)), source.toString());
+        res.pass1.writeTables(prefix);
+        res.pass2.writeMachineCode(prefix + "MACHINECODE.txt", null);
+        files = new LinkedHashMap<>();
+        for(String name : OUTPUTS) files.put(name, Files.readAllBytes(Paths.get(prefix + name)));
+        if(res.pass1.diag.errors() == 0) put(key, files);
+        misses.incrementAndGet();
+        missNanos.addAndGet(System.nanoTime() - t0);
+        return new Outputs(false, files, res.pass1.diag);
+    }
+
+    void report(PrintStream out){
+        long h = hits.get(), m = misses.get();
+        out.println(String.format("cache %s: %d hits (%.3f ms avg), %d misses (%.3f ms avg), %.1f%% hit rate, %d stored, %d evicted",
+                dir, h, h==0 ? 0 : hitNanos.get()/1e6/h, m, m==0 ? 0 : missNanos.get()/1e6/m,
+                h+m==0 ? 0 : 100.0*h/(h+m), stores.get(), evictions.get()));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Paths.get(".asmcache");
+        long maxMB = 256;
+        int a = 0;
+        for(; a+1<args.length && args[a].startsWith("-"); a+=2){
+            if(args[a].equals("-c")) dir = Paths.get(args[a+1]);
+            else if(args[a].equals("-m")) maxMB = Long.parseLong(args[a+1]);
+            else if(args[a].equals("--optab")) OpTable.load(args[a+1]);
+        }
+        if(a >= args.length){
+            System.out.println("Usage: java AssemblyCache [-c cachedir] [-m maxMB] [--optab file] <assembly_input_file>");
+            return;
+        }
+        AssemblyCache cache = new AssemblyCache(dir, maxMB << 20);
+        Outputs o = cache.assemble(Paths.get(args[a]), "");
+        System.out.println((o.hit ? "cache hit: " : "assembled: ") + String.join(", ", OUTPUTS) + " written");
+        cache.report(System.out);
+        if(o.diag != null){
+            o.diag.print(System.err);
+            if(o.diag.errors() > 0) System.exit(1);
+        }
+    }
+}
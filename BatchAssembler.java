@@ -0,0 +1,191 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+  BatchAssembler.java
+  Assembles many source files in parallel, each on its own Assembler pass instances.
+
+  Usage:
+    javac *.java
+    java BatchAssembler [-o outdir] [-j threads] [-c cachedir [-m maxMB]] <dir|file> [<dir|file> ...]
+
+    A directory argument takes every *.asm file in it (sorted by name).
+    Outputs per source x.asm go to outdir (default: batch_out):
+      x.IC.txt, x.SYMTAB.txt, x.LITTAB.txt, x.POOLTAB.txt, x.MACHINECODE.txt
+    Two different sources with the same base name (a/x.asm, b/x.asm) would write the same
+    outputs, so such a batch is refused before anything is assembled; a file named twice is
+    assembled once.
+    One report line per file and a summary are printed at the end. A source with assembler
+    errors still gets its outputs but is reported FAILED with the first diagnostic.
+    With -c, unchanged sources are restored from an AssemblyCache instead of assembled.
+*/
+
+public class BatchAssembler {
+
+    static class Report {
+        final Path source;
+        int lines;          // machine code lines
+        int symbols, literals;
+        long nanos;
+        String error;       // null when the file assembled
+        boolean cached;     // restored from the cache
+
+        Report(Path source){ this.source = source; }
+    }
+
+    final Path outDir;
+    final ForkJoinPool pool;
+    AssemblyCache cache; // null = always assemble
+
+    BatchAssembler(Path outDir, int threads){
+        this.outDir = outDir;
+        this.pool = new ForkJoinPool(threads); // work-stealing, one worker per core by default
+    }
+
+    static List<Path> collect(List<String> args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for(String a : args){
+            Path p = Paths.get(a);
+            if(Files.isDirectory(p)){
+                try(DirectoryStream<Path> ds = Files.newDirectoryStream(p, "*.asm")){
+                    List<Path> inDir = new ArrayList<>();
+                    for(Path f : ds) if(Files.isRegularFile(f)) inDir.add(f);
+                    Collections.sort(inDir);
+                    files.addAll(inDir);
+                }
+            } else {
+                files.add(p);
+            }
+        }
+        return files;
+    }
+
+    // Drops repeated files; returns a message naming two sources that would share outputs, or null
+    static String checkNames(List<Path> files){
+        Set<Path> seen = new HashSet<>();
+        Map<String, Path> byName = new HashMap<>();
+        for(Iterator<Path> it = files.iterator(); it.hasNext(); ){
+            Path f = it.next();
+            if(!seen.add(f.toAbsolutePath().normalize())){
+                it.remove();
+                continue;
+            }
+            Path other = byName.putIfAbsent(baseName(f), f);
+            if(other != null) return other + " and " + f + " would both write " + baseName(f) + ".* in the output directory";
+        }
+        return null;
+    }
+
+    static String baseName(Path file){
+        String n = file.getFileName().toString();
+        int dot = n.lastIndexOf('.');
+        return dot>0 ? n.substring(0, dot) : n;
+    }
+
+    Report assembleOne(Path file){
+        Report r = new Report(file);
+        long t0 = System.nanoTime();
+        try{
+            if(cache != null){
+                AssemblyCache.Outputs o = cache.assemble(file, outDir.resolve(baseName(file)).toString() + ".");
+                r.cached = o.hit;
+                r.lines = o.lines("MACHINECODE.txt");
+                r.symbols = o.lines("SYMTAB.txt");
+                r.literals = o.lines("LITTAB.txt");
+                if(o.diag != null) r.error = errors(o.diag);
+                r.nanos = System.nanoTime() - t0;
+                return r;
+            }
+            Assembler.Result res = new Assembler().assemble(file.toString());
+            String prefix = outDir.resolve(baseName(file)).toString() + ".";
+            res.pass1.writeTables(prefix);
+            res.pass2.writeMachineCode(prefix + "MACHINECODE.txt", null);
+            r.lines = res.machineCode.size();
+            r.symbols = res.pass1.symbols.size();
+            r.literals = res.pass1.litList.size();
+            r.error = errors(res.pass1.diag);
+        } catch(Exception e){
+            r.error = e.toString();
+        }
+        r.nanos = System.nanoTime() - t0;
+        return r;
+    }
+
+    // null when d has no errors
+    static String errors(Diagnostics d){
+        if(d.errors() == 0) return null;
+        for(Diagnostics.Diagnostic x : d.all()){
+            if(x.severity == Diagnostics.Severity.ERROR) return d.errors() + " error(s), first: " + x;
+        }
+        return null;
+    }
+
+    List<Report> run(List<Path> files) throws InterruptedException {
+        List<Callable<Report>> tasks = new ArrayList<>();
+        for(Path f : files) tasks.add(() -> assembleOne(f));
+        List<Report> reports = new ArrayList<>();
+        for(Future<Report> f : pool.invokeAll(tasks)){
+            try{
+                reports.add(f.get());
+            } catch(ExecutionException e){
+                // assembleOne catches everything it can; keep going for the rest
+            }
+        }
+        pool.shutdown();
+        return reports;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Path out = Paths.get("batch_out");
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path cacheDir = null;
+        long cacheMB = 256;
+        List<String> inputs = new ArrayList<>();
+        for(int i=0;i<args.length;i++){
+            if(args[i].equals("-o") && i+1<args.length) out = Paths.get(args[++i]);
+            else if(args[i].equals("-j") && i+1<args.length) threads = Integer.parseInt(args[++i]);
+            else if(args[i].equals("-c") && i+1<args.length) cacheDir = Paths.get(args[++i]);
+            else if(args[i].equals("-m") && i+1<args.length) cacheMB = Long.parseLong(args[++i]);
+            else inputs.add(args[i]);
+        }
+        if(inputs.isEmpty()){
+            System.out.println("Usage: java BatchAssembler [-o outdir] [-j threads] [-c cachedir [-m maxMB]] <dir|file> [<dir|file> ...]");
+            return;
+        }
+
+        List<Path> files = collect(inputs);
+        String clash = checkNames(files);
+        if(clash != null){
+            System.out.println("Error: " + clash + "; rename one or assemble them in separate runs");
+            System.exit(1);
+        }
+        Files.createDirectories(out);
+        long t0 = System.nanoTime();
+        BatchAssembler batch = new BatchAssembler(out, threads);
+        if(cacheDir != null) batch.cache = new AssemblyCache(cacheDir, cacheMB << 20);
+        List<Report> reports = batch.run(files);
+        long wall = System.nanoTime() - t0;
+
+        int ok = 0, failed = 0;
+        long lines = 0;
+        System.out.println("FILE\tSTATUS\tLINES\tSYMBOLS\tLITERALS\tMS");
+        for(Report r : reports){
+            if(r.error == null){
+                ok++;
+                lines += r.lines;
+                System.out.println(r.source + (r.cached ? "\tCACHED\t" : "\tOK\t") + r.lines + "\t" + r.symbols + "\t" + r.literals + "\t" + r.nanos/1_000_000);
+            } else {
+                failed++;
+                System.out.println(r.source + "\tFAILED\t" + r.error);
+            }
+        }
+        double secs = wall / 1e9;
+        System.out.println("\n" + files.size() + " files, " + ok + " assembled, " + failed + " failed, "
+                + threads + " threads, " + String.format("%.3f", secs) + " s");
+        System.out.println(String.format("%.1f files/s, %.0f machine code lines/s", ok/secs, lines/secs));
+        if(batch.cache != null) batch.cache.report(System.out);
+        System.out.println("Outputs written to " + out);
+    }
+}
@@ -0,0 +1,148 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+
+/*
+  BinaryIC.java
+  Compact binary intermediate code shared by Pass1 and Pass2.
+
+  Usage (debug dump of a binary IC file in the text IC notation):
+    javac BinaryIC.java
+    java BinaryIC IC.bin
+
+  Layout (big-endian):
+    header : magic "BIC1" (4 bytes), record count (int)
+    record : 16 bytes each
+      byte  class    CLS_IS / CLS_AD / CLS_DL
+      byte  opcode   numeric opcode, e.g. 4 for (IS,04)
+      byte  kind     operand kind 'S', 'L', 'C' or 0 when there is no operand
+      byte  flags    F_REG if a register field is present, F_PLUS for ORIGIN x+n
+      int   reg      register number
+      int   operand  symbol/literal index or constant
+      int   extra    ORIGIN offset; for an IS register written with leading zeros ("01"),
+                     the number of digits, so Pass2 prints it as written (0 otherwise)
+*/
+
+public class BinaryIC {
+    static final int MAGIC = 0x42494331; // "BIC1"
+    static final int HEADER = 8;
+    static final int RECORD = 16;
+
+    static final byte CLS_IS = 1, CLS_AD = 2, CLS_DL = 3;
+    static final byte F_REG = 1, F_PLUS = 2;
+
+    // register as written in the source: reg with leading zeros up to width digits
+    static String regText(int reg, int width){
+        String s = String.valueOf(reg);
+        StringBuilder sb = new StringBuilder(width);
+        for(int i=s.length();i<width;i++) sb.append('0');
+        return sb.append(s).toString();
+    }
+
+    // extra field for a register written as text
+    static int regWidth(String reg){
+        return reg.length() > 1 && reg.charAt(0) == '0' ? reg.length() : 0;
+    }
+
+    static String className(int cls){
+        return cls==CLS_IS ? "IS" : cls==CLS_AD ? "AD" : "DL";
+    }
+
+    // Buffered writer over a FileChannel; the record count is patched into the header on close.
+    static class Writer implements Closeable {
+        final FileChannel ch;
+        final ByteBuffer buf = ByteBuffer.allocateDirect(1<<16);
+        int count;
+
+        Writer(String file) throws IOException {
+            ch = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            buf.putInt(MAGIC).putInt(0);
+        }
+
+        void write(byte cls, int opcode, byte kind, byte flags, int reg, int operand, int extra) throws IOException {
+            if(buf.remaining() < RECORD) flush();
+            buf.put(cls).put((byte)opcode).put(kind).put(flags).putInt(reg).putInt(operand).putInt(extra);
+            count++;
+        }
+
+        void flush() throws IOException {
+            buf.flip();
+            while(buf.hasRemaining()) ch.write(buf);
+            buf.clear();
+        }
+
+        public void close() throws IOException {
+            flush();
+            buf.putInt(count).flip();
+            ch.write(buf, 4);
+            ch.close();
+        }
+    }
+
+    // Memory-mapped reader; fields of the current record are exposed as ints, no Strings are created.
+    static class Reader implements Closeable {
+        final FileChannel ch;
+        final MappedByteBuffer map;
+        final int count;
+        int pos = -1;
+        int cls, opcode, kind, flags, reg, operand, extra;
+
+        Reader(String file) throws IOException {
+            ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if(map.limit() < HEADER || map.getInt(0) != MAGIC) throw new IOException(file + ": not a binary IC file");
+            count = map.getInt(4);
+        }
+
+        // next() then reads record `record` (0-based)
+        void seek(int record){ pos = record-1; }
+
+        boolean next(){
+            if(pos+1 >= count) return false;
+            pos++;
+            int at = HEADER + pos*RECORD;
+            cls = map.get(at);
+            opcode = map.get(at+1);
+            kind = map.get(at+2);
+            flags = map.get(at+3);
+            reg = map.getInt(at+4);
+            operand = map.getInt(at+8);
+            extra = map.getInt(at+12);
+            return true;
+        }
+
+        public void close() throws IOException { ch.close(); }
+    }
+
+    static boolean isBinary(String file){
+        try(DataInputStream in = new DataInputStream(new FileInputStream(file))){
+            return in.readInt() == MAGIC;
+        } catch(IOException e){
+            return false;
+        }
+    }
+
+    // Text IC form of the reader's current record, for diffing against IC.txt: the same line,
+    // since Pass1 writes DC/DS constants and ORIGIN offsets to IC.txt as parsed (0 when bad)
+    static String toText(Reader r){
+        StringBuilder sb = new StringBuilder();
+        sb.append('(').append(className(r.cls)).append(',');
+        if(r.opcode < 10) sb.append('0');
+        sb.append(r.opcode).append(')');
+        if((r.flags & F_REG) != 0) sb.append('(').append(r.cls==CLS_IS && r.extra > 0 ? regText(r.reg, r.extra) : String.valueOf(r.reg)).append(')');
+        if(r.kind != 0) sb.append('(').append((char)r.kind).append(',').append(r.operand).append(')');
+        if(r.cls==CLS_AD && r.opcode==3) sb.append('+').append((r.flags & F_PLUS) != 0 ? "+" + r.extra : "0");
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length==0){
+            System.out.println("Usage: java BinaryIC <binary_IC_file>");
+            return;
+        }
+        try(Reader r = new Reader(args[0])){
+            while(r.next()) System.out.println(toText(r));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.PrintStream;
+import java.util.*;
+
+/*
+  Diagnostics.java
+  Problems found while assembling, collected with file, line, severity and code instead of
+  being swallowed or thrown out of the middle of a pass. Pass1, Pass2 and the macro
+  processor report into one; the CLIs print them on stderr and exit with status 1 when
+  there were errors.
+
+  Modes:
+    keep-going (default)  every problem is recorded, the pass continues with the same
+                          fallback value as before (0, or the unchanged LC) and writes its
+                          outputs, so one run shows all errors
+    fail-fast (--fail-fast on Pass1, Pass2, TwoPassMacroProcessor)
+                          the first error throws Diagnostics.Failure; nothing further is read
+
+  Valid input pays nothing: numbers are checked with parseInt below, which returns NAN instead
+  of throwing, and a Diagnostic is only built on an error path.
+
+  Codes:
+    A101 START operand is not a number             A201 malformed SYMTAB/LITTAB line
+    A102 DS size is not a non-negative number      A202 SYMTAB/LITTAB cannot be read
+    A103 DC constant is not a number               A203 malformed IC record
+    A104 bad ORIGIN operand                        A204 symbol index not in SYMTAB
+    A105 symbol used but never defined             A205 literal index not in LITTAB
+    A106 BC condition is not a condition name
+    A107 register number out of range
+    A108 word does not fit the object file format
+    M301 macro nesting deeper than the limit       M302 recursive macro call
+    M303 MACRO without MEND
+*/
+
+public class Diagnostics {
+    enum Severity { WARNING, ERROR }
+
+    static final int NAN = Integer.MIN_VALUE; // parseInt result for anything that is not an int
+
+    static class Diagnostic {
+        final String file;
+        final int line; // 1-based; 0 when the problem has no single line
+        final Severity severity;
+        final String code, message;
+
+        Diagnostic(String file, int line, Severity severity, String code, String message){
+            this.file = file;
+            this.line = line;
+            this.severity = severity;
+            this.code = code;
+            this.message = message;
+        }
+
+        public String toString(){
+            return file + (line > 0 ? ":" + line : "") + ": " + severity.name().toLowerCase(Locale.ROOT) + " " + code + ": " + message;
+        }
+    }
+
+    // Thrown by the first error in fail-fast mode
+    static class Failure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final Diagnostic diagnostic;
+
+        Failure(Diagnostic d){
+            super(d.toString(), null, false, false); // no stack trace: this is a report, not a bug
+            diagnostic = d;
+        }
+    }
+
+    final boolean failFast;
+    private final List<Diagnostic> list = new ArrayList<>();
+    private int errors;
+
+    Diagnostics(boolean failFast){ this.failFast = failFast; }
+
+    // synchronized: Pass2 workers of one run share the collector
+    synchronized void add(Diagnostic d){
+        list.add(d);
+        if(d.severity == Severity.ERROR){
+            errors++;
+            if(failFast) throw new Failure(d);
+        }
+    }
+
+    void error(String file, int line, String code, String message){
+        add(new Diagnostic(file, line, Severity.ERROR, code, message));
+    }
+
+    void warning(String file, int line, String code, String message){
+        add(new Diagnostic(file, line, Severity.WARNING, code, message));
+    }
+
+    synchronized int errors(){ return errors; }
+
+    synchronized int size(){ return list.size(); }
+
+    // in file and line order (parallel workers report out of order)
+    synchronized List<Diagnostic> all(){
+        List<Diagnostic> l = new ArrayList<>(list);
+        l.sort(Comparator.comparing((Diagnostic d) -> d.file).thenComparingInt(d -> d.line));
+        return l;
+    }
+
+    void print(PrintStream out){
+        List<Diagnostic> l = all();
+        for(Diagnostic d : l) out.println(d);
+        if(!l.isEmpty()) out.println(errors() + " error(s), " + (l.size() - errors()) + " warning(s)");
+    }
+
+    // The Failure behind e (directly or as the cause of an ExecutionException etc.), or null
+    static Failure failure(Throwable e){
+        for(Throwable t = e; t != null; t = t.getCause()) if(t instanceof Failure) return (Failure)t;
+        return null;
+    }
+
+    // Integer.parseInt without the exception: optional sign and decimal digits, in int range.
+    // Anything else, null and Integer.MIN_VALUE itself give NAN.
+    static int parseInt(CharSequence s){
+        if(s == null) return NAN;
+        int n = s.length(), i = 0;
+        if(n == 0) return NAN;
+        boolean neg = false;
+        char c = s.charAt(0);
+        if(c == '-' || c == '+'){
+            neg = c == '-';
+            if(++i == n) return NAN;
+        }
+        long v = 0;
+        for(; i<n; i++){
+            c = s.charAt(i);
+            if(c < '0' || c > '9') return NAN;
+            v = v*10 + (c - '0');
+            if(v > Integer.MAX_VALUE) return NAN;
+        }
+        return (int)(neg ? -v : v);
+    }
+}
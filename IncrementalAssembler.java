@@ -0,0 +1,376 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  IncrementalAssembler.java
+  Reassembles a source after an edit without redoing the unchanged part.
+
+  Usage:
+    javac *.java
+    java IncrementalAssembler source.asm [cache_file]     (cache defaults to source.asm.inc)
+
+  Produces the same IC.txt, SYMTAB.txt, LITTAB.txt, POOLTAB.txt and MACHINECODE.txt as
+  Pass1 + Pass2, and saves the cache for the next run.
+
+  The source is cut into regions that end after each LTORG or ORIGIN statement. For every
+  region the cache keeps a content hash and the Pass1 state at its start (LC, table sizes,
+  open literal pool, position in Pass1's undo log). On the next run the leading regions whose
+  hashes still match are skipped; Pass1 is rewound to the first changed region by undoing
+  the logged address updates and truncating the tables, and continues from there.
+  Pass2 keeps the machine code of the unchanged prefix and re-emits only the lines whose
+  symbol or literal ended up at a different address. Diagnostics of the skipped lines are
+  kept from the cache; undefined symbols are checked again over the whole table.
+*/
+
+public class IncrementalAssembler {
+    static final int MAGIC = 0x494E4334; // "INC4"
+
+    static class Region {
+        int firstLine, lineCount;
+        long hash;
+        // Pass1 state when the region starts
+        int LC, symCount, litCount, poolCount, undoStart, icStart;
+        boolean firstStatement;
+        int poolStart; // first literal of the open pool
+    }
+
+    // What one run leaves for the next
+    static class Cache {
+        List<Region> regions = new ArrayList<>();
+        Pass1 pass1;                 // final Pass1 state, including its undo log
+        List<String> machine = new ArrayList<>();
+        int[] icRef = new int[0];    // per IC line: symbol index, -literal index, or 0
+        int[] mcIndex = new int[0];  // per IC line: its machine code line, or -1
+    }
+
+    // What the last run did
+    int regionsReused, linesReprocessed, machineReemitted;
+    String file = "<input>"; // source name in diagnostics
+
+    static long hash(List<String> lines, int from, int count){
+        long h = 0xcbf29ce484222325L; // FNV-1a
+        for(int i=from;i<from+count;i++){
+            String s = lines.get(i);
+            for(int k=0;k<s.length();k++){
+                h ^= s.charAt(k);
+                h *= 0x100000001b3L;
+            }
+            h ^= '\n';
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    static Region snapshot(Pass1 p, int line){
+        Region r = new Region();
+        r.firstLine = line;
+        r.LC = p.LC;
+        r.symCount = p.symbols.size();
+        r.litCount = p.litList.size();
+        r.poolCount = p.poolTable.size();
+        r.undoStart = p.undoSize;
+        r.icStart = p.IC.size();
+        r.firstStatement = p.firstLine;
+        r.poolStart = p.poolStart;
+        return r;
+    }
+
+    // Puts a finished Pass1 back into the state it had at the start of region r
+    static void rewind(Pass1 p, Region r){
+        for(int u = p.undoSize-2; u >= r.undoStart; u -= 2){
+            int ref = p.undo[u], old = p.undo[u+1];
+            if(ref > 0) p.symbols.setAddr(ref, old);
+            else p.litList.get(-ref-1).addr = old;
+        }
+        p.undoSize = r.undoStart;
+        p.symbols.truncate(r.symCount);
+        while(p.litList.size() > r.litCount) p.litList.remove(p.litList.size()-1);
+        while(p.poolTable.size() > r.poolCount) p.poolTable.remove(p.poolTable.size()-1);
+        p.IC.subList(r.icStart, p.IC.size()).clear();
+        p.LC = r.LC;
+        p.litCounter = r.litCount;
+        p.firstLine = r.firstStatement;
+        p.poolStart = r.poolStart;
+        p.litMap = new HashMap<>();
+        for(int i=r.poolStart;i<r.litCount;i++) p.litMap.put(p.litList.get(i).lit, p.litList.get(i));
+    }
+
+    // Operand reference of a text IC line: symbol index, -literal index, 0 for none
+    static int operandRef(String ic){
+        if(!ic.startsWith("(IS")) return 0;
+        int at = ic.indexOf("(S,");
+        int sign = 1;
+        if(at < 0){
+            at = ic.indexOf("(L,");
+            sign = -1;
+        }
+        if(at < 0) return 0;
+        int v = 0;
+        for(int i=at+3; i<ic.length() && ic.charAt(i)>='0' && ic.charAt(i)<='9'; i++) v = v*10 + (ic.charAt(i)-'0');
+        return sign*v;
+    }
+
+    static int[] addresses(SymbolTable table, int count){
+        int[] a = new int[count+1];
+        for(int i=1;i<=count;i++) a[i] = table.addr(i)==-1 ? 0 : table.addr(i);
+        return a;
+    }
+
+    static int[] addresses(List<Pass1.Literal> table, int count){
+        int[] a = new int[count+1];
+        for(int i=0;i<count;i++) a[i+1] = table.get(i).addr==-1 ? 0 : table.get(i).addr;
+        return a;
+    }
+
+    Cache assemble(List<String> lines, Cache old){
+        regionsReused = 0;
+        linesReprocessed = 0;
+        machineReemitted = 0;
+
+        // first region whose content changed
+        int k = 0, at = 0;
+        if(old != null){
+            while(k < old.regions.size()){
+                Region r = old.regions.get(k);
+                if(at + r.lineCount > lines.size() || hash(lines, at, r.lineCount) != r.hash) break;
+                at += r.lineCount;
+                k++;
+            }
+            if(k == old.regions.size() && at == lines.size()){
+                regionsReused = k;
+                return old; // nothing changed
+            }
+            if(k == old.regions.size()) k--; // only lines appended: the open last region continues
+        }
+        if(old == null || k <= 0){
+            old = null;
+            k = 0;
+        }
+
+        Cache c = new Cache();
+        Pass1 p1;
+        int[] oldSym = null, oldLit = null;
+        int startLine = 0;
+        if(old != null){
+            Region r = old.regions.get(k);
+            p1 = old.pass1;
+            oldSym = addresses(p1.symbols, r.symCount);
+            oldLit = addresses(p1.litList, r.litCount);
+            rewind(p1, r);
+            c.regions.addAll(old.regions.subList(0, k));
+            startLine = r.firstLine;
+            regionsReused = k;
+        } else {
+            p1 = new Pass1();
+            p1.undo = new int[64];
+        }
+
+        // the reprocessed lines and finish() report again; earlier lines keep their diagnostics,
+        // and so do the IC records of the unchanged prefix (Pass2's, under file + " (IC)")
+        Diagnostics diag = new Diagnostics(false);
+        String icFile = file + " (IC)";
+        int icStart = old != null ? old.regions.get(k).icStart : 0;
+        if(old != null){
+            for(Diagnostics.Diagnostic d : p1.diag.all()){
+                boolean kept = d.file.equals(icFile) ? d.line <= icStart : d.line <= startLine && !d.code.equals("A105");
+                if(kept) diag.add(d);
+            }
+        }
+        p1.diag = diag;
+        p1.file = file;
+        p1.lineNo = startLine;
+        try{
+            Region cur = null;
+            for(int i=startLine;i<lines.size();i++){
+                if(cur == null){
+                    cur = snapshot(p1, i);
+                    c.regions.add(cur);
+                }
+                p1.processLine(lines.get(i));
+                cur.lineCount++;
+                if(p1.lastOp == OpTable.LTORG || p1.lastOp == OpTable.ORIGIN){
+                    cur.hash = hash(lines, cur.firstLine, cur.lineCount);
+                    cur = null;
+                }
+            }
+            if(cur != null) cur.hash = hash(lines, cur.firstLine, cur.lineCount);
+            p1.finish();
+        } catch(IOException e){
+            throw new UncheckedIOException(e); // Pass1 only does I/O when streaming IC, not here
+        }
+        linesReprocessed = lines.size() - startLine;
+        c.pass1 = p1;
+
+        Pass2 p2 = new Pass2();
+        p2.useTables(p1);
+        p2.diag = new Diagnostics(false); // re-emitted prefix lines: their diagnostics were kept above
+        p2.file = icFile;
+        c.icRef = new int[p1.IC.size()];
+        c.mcIndex = new int[p1.IC.size()];
+
+        // unchanged prefix: keep its machine code, re-emit lines whose operand moved
+        if(old != null){
+            int mcStart = 0;
+            for(int i=0;i<icStart;i++) if(old.mcIndex[i] >= 0) mcStart = old.mcIndex[i]+1;
+            c.machine.addAll(old.machine.subList(0, mcStart));
+            System.arraycopy(old.icRef, 0, c.icRef, 0, icStart);
+            System.arraycopy(old.mcIndex, 0, c.mcIndex, 0, icStart);
+            int[] newSym = addresses(p1.symbols, oldSym.length-1);
+            int[] newLit = addresses(p1.litList, oldLit.length-1);
+            for(int i=0;i<icStart;i++){
+                int ref = c.icRef[i];
+                if(ref == 0 || c.mcIndex[i] < 0) continue;
+                boolean moved = ref > 0 ? oldSym[ref] != newSym[ref] : oldLit[-ref] != newLit[-ref];
+                if(!moved) continue;
+                p2.machine.clear();
+                p2.record = i;
+                p2.translate(p1.IC.get(i));
+                c.machine.set(c.mcIndex[i], p2.machine.get(0));
+                machineReemitted++;
+            }
+        }
+
+        // changed suffix: translate as usual, reporting with Pass1 as in Assembler.pass2
+        p2.diag = diag;
+        p2.record = icStart;
+        p2.machine.clear();
+        for(int i=icStart;i<p1.IC.size();i++){
+            String ic = p1.IC.get(i);
+            c.icRef[i] = operandRef(ic);
+            int before = p2.machine.size();
+            p2.translate(ic);
+            c.mcIndex[i] = p2.machine.size() > before ? c.machine.size() + before : -1;
+        }
+        machineReemitted += p2.machine.size();
+        c.machine.addAll(p2.machine);
+        return c;
+    }
+
+    static Cache load(String file){
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1<<16))){
+            if(in.readInt() != MAGIC) return null;
+            Cache c = new Cache();
+            int n = in.readInt();
+            for(int i=0;i<n;i++){
+                Region r = new Region();
+                r.firstLine = in.readInt(); r.lineCount = in.readInt(); r.hash = in.readLong();
+                r.LC = in.readInt(); r.symCount = in.readInt(); r.litCount = in.readInt(); r.poolCount = in.readInt();
+                r.undoStart = in.readInt(); r.icStart = in.readInt(); r.firstStatement = in.readBoolean();
+                r.poolStart = in.readInt();
+                c.regions.add(r);
+            }
+            Pass1 p = new Pass1();
+            n = in.readInt();
+            for(int i=0;i<n;i++){
+                int s = p.symbols.add(in.readUTF());
+                p.symbols.setAddr(s, in.readInt());
+                p.symbols.setLength(s, in.readInt());
+                p.symbols.setLine(s, in.readInt());
+            }
+            n = in.readInt();
+            for(int i=0;i<n;i++){
+                Pass1.Literal L = new Pass1.Literal(in.readUTF(), i+1);
+                L.addr = in.readInt();
+                p.litList.add(L);
+            }
+            n = in.readInt();
+            for(int i=0;i<n;i++) p.poolTable.add(in.readInt());
+            p.poolStart = p.litList.size(); // finish() placed the last pool
+            p.undoSize = in.readInt();
+            p.undo = new int[Math.max(64, p.undoSize)];
+            for(int i=0;i<p.undoSize;i++) p.undo[i] = in.readInt();
+            n = in.readInt();
+            c.icRef = new int[n];
+            c.mcIndex = new int[n];
+            for(int i=0;i<n;i++){
+                p.IC.add(in.readUTF());
+                c.icRef[i] = in.readInt();
+                c.mcIndex[i] = in.readInt();
+            }
+            n = in.readInt();
+            for(int i=0;i<n;i++) c.machine.add(in.readUTF());
+            n = in.readInt();
+            for(int i=0;i<n;i++){
+                int line = in.readInt();
+                Diagnostics.Severity sev = Diagnostics.Severity.values()[in.readByte()];
+                p.diag.add(new Diagnostics.Diagnostic(in.readUTF(), line, sev, in.readUTF(), in.readUTF()));
+            }
+            c.pass1 = p;
+            return c;
+        } catch(IOException e){
+            return null; // missing or unreadable cache: full assembly
+        }
+    }
+
+    static void save(Cache c, String file) throws IOException {
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16))){
+            out.writeInt(MAGIC);
+            out.writeInt(c.regions.size());
+            for(Region r : c.regions){
+                out.writeInt(r.firstLine); out.writeInt(r.lineCount); out.writeLong(r.hash);
+                out.writeInt(r.LC); out.writeInt(r.symCount); out.writeInt(r.litCount); out.writeInt(r.poolCount);
+                out.writeInt(r.undoStart); out.writeInt(r.icStart); out.writeBoolean(r.firstStatement);
+                out.writeInt(r.poolStart);
+            }
+            Pass1 p = c.pass1;
+            out.writeInt(p.symbols.size());
+            for(int i=1;i<=p.symbols.size();i++){
+                out.writeUTF(p.symbols.name(i)); out.writeInt(p.symbols.addr(i)); out.writeInt(p.symbols.length(i));
+                out.writeInt(p.symbols.line(i));
+            }
+            out.writeInt(p.litList.size());
+            for(Pass1.Literal L : p.litList){
+                out.writeUTF(L.lit); out.writeInt(L.addr);
+            }
+            out.writeInt(p.poolTable.size());
+            for(int v : p.poolTable) out.writeInt(v);
+            out.writeInt(p.undoSize);
+            for(int i=0;i<p.undoSize;i++) out.writeInt(p.undo[i]);
+            out.writeInt(p.IC.size());
+            for(int i=0;i<p.IC.size();i++){
+                out.writeUTF(p.IC.get(i)); out.writeInt(c.icRef[i]); out.writeInt(c.mcIndex[i]);
+            }
+            out.writeInt(c.machine.size());
+            for(String s : c.machine) out.writeUTF(s);
+            List<Diagnostics.Diagnostic> diags = p.diag.all();
+            out.writeInt(diags.size());
+            for(Diagnostics.Diagnostic d : diags){
+                out.writeInt(d.line); out.writeByte(d.severity.ordinal());
+                out.writeUTF(d.file); out.writeUTF(d.code); out.writeUTF(d.message);
+            }
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length==0){
+            System.out.println("Usage: java IncrementalAssembler <assembly_input_file> [cache_file]");
+            return;
+        }
+        String cacheFile = args.length>1 ? args[1] : args[0] + ".inc";
+        long t0 = System.nanoTime();
+        List<String> lines = new ArrayList<>();
+        try(BufferedReader br = new BufferedReader(new FileReader(args[0]), 1<<16)){
+            String line;
+            while((line = br.readLine()) != null) lines.add(line);
+        }
+
+        IncrementalAssembler inc = new IncrementalAssembler();
+        inc.file = args[0];
+        Cache old = load(cacheFile);
+        Cache c = inc.assemble(lines, old);
+        long t1 = System.nanoTime();
+
+        c.pass1.writeTables();
+        try(PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter("MACHINECODE.txt"), 1<<16))){
+            for(String s : c.machine) pw.println(s);
+        }
+        if(c != old) save(c, cacheFile);
+
+        System.out.println((inc.regionsReused == 0 && c != old ? "full assembly" : "incremental") + ": " + c.regions.size() + " regions, "
+                + inc.regionsReused + " reused, " + inc.linesReprocessed + " lines reprocessed, "
+                + inc.machineReemitted + " machine code lines re-emitted, " + (t1-t0)/1_000_000 + " ms");
+        System.out.println("IC.txt, SYMTAB.txt, LITTAB.txt, POOLTAB.txt, MACHINECODE.txt written; cache " + cacheFile);
+        c.pass1.diag.print(System.err);
+        if(c.pass1.diag.errors() > 0) System.exit(1);
+    }
+}
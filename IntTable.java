@@ -0,0 +1,30 @@
+import java.util.Arrays;
+
+/*
+  IntTable.java
+  Growable int array addressed by a dense index (symbol/literal numbers from Pass1 start at 1).
+  Replaces Map<Integer,Integer>: no boxing and no hashing per lookup. Unset or out-of-range
+  indices read as 0, like getOrDefault(idx, 0) did.
+*/
+
+public class IntTable {
+    int[] values;
+    int size; // highest index set + 1
+
+    IntTable(){ this(64); }
+
+    IntTable(int capacity){ values = new int[Math.max(capacity, 1)]; }
+
+    void put(int idx, int value){
+        if(idx < 0) throw new IndexOutOfBoundsException("negative index " + idx);
+        if(idx >= values.length) values = Arrays.copyOf(values, Math.max(idx+1, values.length*2));
+        values[idx] = value;
+        if(idx >= size) size = idx+1;
+    }
+
+    int get(int idx){
+        return idx >= 0 && idx < size ? values[idx] : 0;
+    }
+
+    int size(){ return size; }
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/*
+  MachineCodeWriter.java
+  Buffered writer for Pass2 machine code lines "+ oo r aaa" (opcode %02d, register,
+  address %03d). Digits are encoded straight into a reusable byte buffer, so there is
+  no String.format and no String per line; the buffer goes out in 64KB blocks, and
+  also to an optional echo stream (the console copy of the CLI). The bytes are the
+  same as PrintWriter.println of the formatted line.
+
+  Usage:
+    try(MachineCodeWriter w = new MachineCodeWriter("MACHINECODE.txt", null)){
+        w.word(4, 1, 205);      // + 04 1 205
+    }
+*/
+
+public class MachineCodeWriter implements Closeable {
+    static final byte[] NL = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    final OutputStream out;
+    final OutputStream echo; // may be null
+    final byte[] buf = new byte[1<<16];
+    int n;
+    long bytes, flushNanos; // written so far and time spent writing, for --stats
+
+    MachineCodeWriter(String file, OutputStream echo) throws IOException {
+        this(new FileOutputStream(file), echo);
+    }
+
+    MachineCodeWriter(OutputStream out, OutputStream echo){
+        this.out = out;
+        this.echo = echo;
+    }
+
+    void word(int opcode, int reg, int addr) throws IOException {
+        if(buf.length - n < 64) flush();
+        buf[n++] = '+'; buf[n++] = ' ';
+        number(opcode, 2);
+        buf[n++] = ' ';
+        number(reg, 1);
+        buf[n++] = ' ';
+        number(addr, 3);
+        newline();
+    }
+
+    // register as written in the text IC (may carry leading zeros)
+    void word(int opcode, CharSequence reg, int addr) throws IOException {
+        if(reg.length()==1 && reg.charAt(0)>='0' && reg.charAt(0)<='9'){
+            word(opcode, reg.charAt(0)-'0', addr);
+            return;
+        }
+        StringBuilder sb = new StringBuilder(16);
+        append(sb, opcode, reg, addr);
+        line(sb);
+    }
+
+    // any ASCII line, e.g. one of Pass2.machine
+    void line(CharSequence s) throws IOException {
+        if(buf.length - n < s.length() + NL.length) flush();
+        if(s.length() + NL.length > buf.length){
+            bytes += s.length();
+            out.write(s.toString().getBytes());
+            if(echo != null) echo.write(s.toString().getBytes());
+        } else {
+            for(int i=0;i<s.length();i++) buf[n++] = (byte)s.charAt(i);
+        }
+        newline();
+    }
+
+    private void newline(){
+        for(byte b : NL) buf[n++] = b;
+    }
+
+    // v zero-padded to width, like %0<width>d (a minus sign counts towards the width)
+    private void number(long v, int width){
+        if(v < 0){
+            buf[n++] = '-';
+            v = -v;
+            width--;
+        }
+        int digits = 1;
+        for(long t=v/10; t>0; t/=10) digits++;
+        for(int i=digits;i<width;i++) buf[n++] = '0';
+        for(int i=n+digits-1; i>=n; i--, v/=10) buf[i] = (byte)('0' + v%10);
+        n += digits;
+    }
+
+    // The same line as a String, for the in-memory machine list
+    static String text(int opcode, CharSequence reg, int addr){
+        StringBuilder sb = new StringBuilder(12);
+        append(sb, opcode, reg, addr);
+        return sb.toString();
+    }
+
+    static void append(StringBuilder sb, int opcode, CharSequence reg, int addr){
+        sb.append("+ ");
+        pad(sb, opcode, 2);
+        sb.append(' ').append(reg).append(' ');
+        pad(sb, addr, 3);
+    }
+
+    static void pad(StringBuilder sb, long v, int width){
+        if(v < 0){
+            sb.append('-');
+            v = -v;
+            width--;
+        }
+        for(long t=Math.max(v,1); t<pow10(width-1); t*=10) sb.append('0');
+        sb.append(v);
+    }
+
+    private static long pow10(int e){
+        long p = 1;
+        while(e-- > 0) p *= 10;
+        return p;
+    }
+
+    void flush() throws IOException {
+        long t0 = System.nanoTime();
+        out.write(buf, 0, n);
+        if(echo != null) echo.write(buf, 0, n);
+        flushNanos += System.nanoTime() - t0;
+        bytes += n;
+        n = 0;
+    }
+
+    public void close() throws IOException {
+        flush();
+        if(echo != null) echo.flush();
+        out.close();
+    }
+}
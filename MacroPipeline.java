@@ -0,0 +1,134 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/*
+  MacroPipeline.java
+  Macro expansion and Pass1 fused into one run: the macro processor expands on its own
+  thread and hands the lines to Pass1 through a bounded queue, so the expanded program
+  is never built in full. When Pass1 falls behind, the queue fills and the expander
+  blocks (backpressure); Pass2 then runs on the in-memory tables as in Assembler.
+
+  Usage:
+    javac *.java
+    java MacroPipeline [-q batches] source.asm   (prints the machine code)
+    java MacroPipeline [-q batches] -            (stdin; macros must be defined before use)
+
+  Macro errors (nesting, recursion, missing MEND; with source line numbers) and Pass1/Pass2
+  diagnostics (with line numbers of the expanded program) are collected in Pass1's
+  Diagnostics, go to stderr together and make the exit status 1.
+
+  Lines travel in batches of BATCH to keep the queue hand-off cheap; -q sets how many
+  batches may be in flight (default 64).
+*/
+
+public class MacroPipeline {
+    static final int BATCH = 256;
+    static final String[] END = new String[0]; // end-of-stream marker
+
+    final int capacity;
+
+    MacroPipeline(int capacity){
+        this.capacity = capacity;
+    }
+
+    // Collects expanded lines into batches and puts them on the queue, blocking when it is full
+    static class QueueSink implements TwoPassMacroProcessor.LineSink {
+        final BlockingQueue<String[]> queue;
+        String[] batch = new String[BATCH];
+        int n;
+
+        QueueSink(BlockingQueue<String[]> queue){ this.queue = queue; }
+
+        public void line(CharSequence line) throws IOException {
+            batch[n++] = line.toString();
+            if(n == BATCH) flush();
+        }
+
+        void flush() throws IOException {
+            if(n == 0) return;
+            put(n == BATCH ? batch : Arrays.copyOf(batch, n));
+            batch = new String[BATCH];
+            n = 0;
+        }
+
+        void put(String[] b) throws IOException {
+            try{
+                queue.put(b);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("pipeline cancelled");
+            }
+        }
+    }
+
+    // file == "-" reads standard input in a single pass
+    Assembler.Result assemble(String file) throws Exception {
+        BlockingQueue<String[]> queue = new ArrayBlockingQueue<>(capacity);
+        ExecutorService expander = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "macro-expander");
+            t.setDaemon(true);
+            return t;
+        });
+
+        Pass1 p1 = new Pass1();
+        String source = file.equals("-") ? "<stdin>" : file;
+        p1.file = source + " (expanded)"; // Pass1 sees expanded lines
+        Diagnostics diag = p1.diag; // macro errors are reported with the assembler's, by source line
+
+        Future<?> producer = expander.submit(() -> {
+            QueueSink sink = new QueueSink(queue);
+            List<TwoPassMacroProcessor.MNTEntry> MNT = new ArrayList<>();
+            List<String> MDT = new ArrayList<>();
+            try{
+                if(file.equals("-")){
+                    BufferedReader in = new BufferedReader(new InputStreamReader(System.in));
+                    TwoPassMacroProcessor.processStream(in, sink, MNT, MDT, TwoPassMacroProcessor.MAX_DEPTH, false, diag, source);
+                } else {
+                    try(BufferedReader in = new BufferedReader(new FileReader(file), 1<<16)){
+                        TwoPassMacroProcessor.pass1(in, MNT, MDT, diag, source);
+                    }
+                    try(BufferedReader in = new BufferedReader(new FileReader(file), 1<<16)){
+                        TwoPassMacroProcessor.pass2(in, sink, MNT, TwoPassMacroProcessor.MAX_DEPTH, false, diag, source);
+                    }
+                }
+                sink.flush();
+            } finally {
+                // always release the consumer, also when expansion failed
+                sink.put(END);
+            }
+            return null;
+        });
+
+        try{
+            for(String[] batch = queue.take(); batch != END; batch = queue.take()){
+                for(String line : batch) p1.processLine(line);
+            }
+            producer.get(); // rethrows an expansion error
+        } catch(Exception e){
+            producer.cancel(true);
+            throw e;
+        } finally {
+            expander.shutdownNow();
+        }
+        p1.finish();
+        return new Assembler().pass2(p1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int capacity = 64;
+        int a = 0;
+        if(args.length > 1 && args[0].equals("-q")){
+            capacity = Integer.parseInt(args[1]);
+            a = 2;
+        }
+        if(a >= args.length){
+            System.out.println("Usage: java MacroPipeline [-q batches] <source_file|->");
+            return;
+        }
+        Assembler.Result r = new MacroPipeline(capacity).assemble(args[a]);
+        for(String s : r.machineCode) System.out.println(s);
+        r.pass1.diag.print(System.err);
+        if(r.pass1.diag.errors() > 0) System.exit(1);
+    }
+}
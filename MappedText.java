@@ -0,0 +1,76 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+
+/*
+  MappedText.java
+  Line reader over a memory-mapped text file, used by 'Pass1 --mmap' and 'Pass2 --mmap'.
+  Lines end at \n, \r or \r\n as with BufferedReader.readLine. After next(), [start,end)
+  is the current line with leading and trailing blanks removed (as String.trim), and
+  ascii tells whether it has only 7-bit bytes, i.e. whether its bytes are its chars.
+  No String is created unless string() or text() is called.
+
+  Usage:
+    try(MappedText t = new MappedText("IC.txt")){
+        while(t.next()){ ... t.at(i) for i in [t.start, t.end) ... }
+    }
+*/
+
+public class MappedText implements Closeable {
+    final FileChannel ch;
+    final MappedByteBuffer map;
+    final int size;
+    int next; // first byte of the following line
+    int start, end;
+    boolean ascii;
+
+    MappedText(String file) throws IOException {
+        ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+        if(ch.size() > Integer.MAX_VALUE){
+            ch.close();
+            throw new IOException(file + ": too large to map");
+        }
+        size = (int)ch.size();
+        map = ch.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    boolean next(){
+        if(next >= size) return false;
+        int s = next, e = s;
+        boolean a = true;
+        while(e < size){
+            byte b = map.get(e);
+            if(b=='\n' || b=='\r') break;
+            if(b < 0) a = false;
+            e++;
+        }
+        next = e+1;
+        if(e < size && map.get(e)=='\r' && next < size && map.get(next)=='\n') next++;
+        while(s<e && (map.get(s)&0xff) <= ' ') s++;
+        while(e>s && (map.get(e-1)&0xff) <= ' ') e--;
+        start = s;
+        end = e;
+        ascii = a;
+        return true;
+    }
+
+    byte at(int i){ return map.get(i); }
+
+    // the current (trimmed) line, decoded like FileReader would
+    String string(){
+        byte[] b = new byte[end-start];
+        map.get(start, b);
+        return new String(b, Charset.defaultCharset());
+    }
+
+    // bytes [s,e) of an ASCII line as a String
+    String text(int s, int e){
+        byte[] b = new byte[e-s];
+        map.get(s, b);
+        return new String(b, java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    public void close() throws IOException { ch.close(); }
+}
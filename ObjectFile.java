@@ -0,0 +1,279 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/*
+  ObjectFile.java
+  Loadable memory image written next to the machine code: the words of the program at their
+  addresses, in contiguous segments (START, ORIGIN and DS leave gaps), literal pools included,
+  with the symbol table in the header. A loader maps the file and copies each segment into
+  memory with one bulk get; nothing is parsed.
+
+  Usage:
+    java Assembler --object prog.obj asm_input.txt         (write it while assembling)
+    java OnePassAssembler --object prog.obj asm_input.txt
+    java ObjectFile prog.obj                                (dump header, symbols, segments)
+
+  Layout (big-endian):
+    header   : magic "OBJ2", entry address, segment count, symbol count, symbol bytes (5 ints)
+    symbols  : per symbol: int address, short name length, name bytes (UTF-8); padded to 4 bytes
+    segments : per segment: int address, int words, int file offset of its first word
+    words    : packed words, opcode<<25 | register<<20 | address: 7-bit opcode (OpTable allows
+               0..99), 5-bit register (A..Z are 1..26), 20-bit address; DC and literal words
+               hold their value (the same int as an opcode 00, register 0 word)
+
+  Pass1 records where each word goes (place/reserve), Pass2 supplies the word itself; both
+  share one Image, so this needs the in-process assembler (IC.txt does not keep resolved
+  ORIGIN targets). A word that does not fit (e.g. register 40 written as digits), an
+  address outside 0..ADDR_MASK (e.g. ORIGIN -5) or a literal without a numeric value is
+  reported as A108 and the object file is not written.
+*/
+
+public class ObjectFile {
+    static final int MAGIC = 0x4F424A32; // "OBJ2"
+    static final int HEADER = 20;
+    static final int ADDR_BITS = 20, ADDR_MASK = (1<<ADDR_BITS)-1;
+    static final int REG_SHIFT = 20, REG_MASK = 31, OP_SHIFT = 25, OP_MAX = 127;
+
+    static boolean fits(int opcode, int reg, int addr){
+        if(opcode == 0 && reg == 0) return true; // DC: the constant itself, any int
+        return opcode >= 0 && opcode <= OP_MAX && reg >= 0 && reg <= REG_MASK && addr >= 0 && addr <= ADDR_MASK;
+    }
+
+    static int pack(int opcode, int reg, int addr){
+        if(!fits(opcode, reg, addr)) throw new IllegalStateException("word does not fit the object format: " + opcode + " " + reg + " " + addr);
+        if(opcode == 0 && reg == 0) return addr;
+        return opcode<<OP_SHIFT | reg<<REG_SHIFT | addr;
+    }
+
+    static int opcode(int w){ return w >>> OP_SHIFT; }
+
+    static int reg(int w){ return (w >>> REG_SHIFT) & REG_MASK; }
+
+    // Addresses (from Pass1) and words (from Pass2), matched by position
+    static class Image {
+        int entry = -1;
+        IntTable address = new IntTable(); // per word
+        BitSet reserved = new BitSet();   // DS words: space only, no content
+        int places;
+        IntTable word = new IntTable();
+        int words;
+        int unfit; // words that do not fit the format (stored as 0)
+        String firstUnfit;
+
+        void start(int addr){ if(entry < 0) entry = addr; }
+
+        void place(int addr){ address.put(places++, addr); }
+
+        void reserve(int addr){
+            reserved.set(places);
+            place(addr);
+        }
+
+        void word(int opcode, int reg, int addr){
+            if(fits(opcode, reg, addr)){
+                word.put(words, pack(opcode, reg, addr));
+            } else {
+                if(unfit++ == 0) firstUnfit = "word " + words + " (opcode " + opcode + ", register " + reg + ", address " + addr + ")";
+                word.put(words, 0);
+            }
+            words++;
+        }
+
+        void word(int opcode, CharSequence reg, int addr){
+            int r = 0;
+            for(int i=0;i<reg.length();i++) r = r*10 + (reg.charAt(i)-'0');
+            word(opcode, r, addr);
+        }
+    }
+
+    // Reports A108 into p1's diagnostics for words that do not fit, addresses outside
+    // 0..ADDR_MASK and literals without a numeric value; false when there was any
+    static boolean check(Pass1 p1, Image img){
+        boolean ok = true;
+        if(img.unfit > 0){
+            p1.diag.error(p1.file, 0, "A108", img.unfit + " word(s) do not fit the object format, first " + img.firstUnfit
+                    + "; opcode 0.." + OP_MAX + ", register 0.." + REG_MASK + ", address 0.." + ADDR_MASK);
+            ok = false;
+        }
+        int outside = 0;
+        String first = null;
+        for(int i=0;i<img.places;i++){
+            int a = img.address.get(i);
+            if(a >= 0 && a <= ADDR_MASK) continue;
+            if(outside++ == 0) first = "word " + i + " at " + a;
+        }
+        for(Pass1.Literal L : p1.litList){ // -1: never placed
+            if((L.addr < -1 || L.addr > ADDR_MASK) && outside++ == 0) first = "literal " + L.lit + " at " + L.addr;
+        }
+        if(outside > 0){
+            p1.diag.error(p1.file, 0, "A108", outside + " address(es) outside 0.." + ADDR_MASK + " of the object format, first " + first);
+            ok = false;
+        }
+        for(Pass1.Literal L : p1.litList){
+            if(L.addr >= 0 && literalValue(L.lit) == Diagnostics.NAN){
+                p1.diag.error(p1.file, 0, "A108", "literal " + L.lit + " has no numeric value for the object file");
+                ok = false;
+            }
+        }
+        return ok;
+    }
+
+    // literal text ='5' or =5 -> 5; Diagnostics.NAN when it is not a number
+    static int literalValue(String lit){
+        return Diagnostics.parseInt(Pass1.stripQuotes(lit.substring(1)).trim());
+    }
+
+    // memory contents: program words, then literal pools; later words win (ORIGIN back).
+    // used (may be null) gets the addresses that hold a word. img must have passed check.
+    static int[] memory(Pass1 p1, Image img, BitSet used){
+        if(img.places != img.words) throw new IllegalStateException(img.places + " addresses for " + img.words + " words");
+        int top = 0;
+        for(int i=0;i<img.places;i++) top = Math.max(top, img.address.get(i)+1);
+        for(Pass1.Literal L : p1.litList) top = Math.max(top, L.addr+1);
+        int[] mem = new int[top];
+        if(used == null) used = new BitSet(top);
+        for(int i=0;i<img.places;i++){
+            if(img.reserved.get(i)) continue;
+            mem[img.address.get(i)] = img.word.get(i);
+            used.set(img.address.get(i));
+        }
+        for(Pass1.Literal L : p1.litList){
+            if(L.addr < 0) continue;
+            int v = literalValue(L.lit);
+            mem[L.addr] = v == Diagnostics.NAN ? 0 : v;
+            used.set(L.addr);
+        }
+        return mem;
+    }
+
+    // Nothing is written when check fails
+    static void write(String file, Pass1 p1, Image img) throws IOException {
+        if(!check(p1, img)) return;
+        BitSet used = new BitSet();
+        int[] mem = memory(p1, img, used);
+
+        ByteArrayOutputStream symBytes = new ByteArrayOutputStream();
+        DataOutputStream sym = new DataOutputStream(symBytes);
+        SymbolTable st = p1.symbols;
+        for(int i=1;i<=st.size();i++){
+            byte[] name = st.name(i).getBytes(StandardCharsets.UTF_8);
+            sym.writeInt(st.addr(i)==-1 ? 0 : st.addr(i));
+            sym.writeShort(name.length);
+            sym.write(name);
+        }
+        while(symBytes.size() % 4 != 0) sym.writeByte(0);
+
+        List<int[]> segs = new ArrayList<>(); // {address, words}
+        for(int a = used.nextSetBit(0); a >= 0; ){
+            int end = used.nextClearBit(a);
+            segs.add(new int[]{a, end-a});
+            a = used.nextSetBit(end);
+        }
+
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1<<16))){
+            out.writeInt(MAGIC);
+            out.writeInt(img.entry < 0 ? (segs.isEmpty() ? 0 : segs.get(0)[0]) : img.entry);
+            out.writeInt(segs.size());
+            out.writeInt(st.size());
+            out.writeInt(symBytes.size());
+            symBytes.writeTo(out);
+            int offset = HEADER + symBytes.size() + segs.size()*12;
+            for(int[] s : segs){
+                out.writeInt(s[0]);
+                out.writeInt(s[1]);
+                out.writeInt(offset);
+                offset += s[1]*4;
+            }
+            for(int[] s : segs){
+                for(int a=s[0];a<s[0]+s[1];a++) out.writeInt(mem[a]);
+            }
+        }
+    }
+
+    static boolean isObject(String file){
+        try(DataInputStream in = new DataInputStream(new FileInputStream(file))){
+            return in.readInt() == MAGIC;
+        } catch(IOException e){
+            return false;
+        }
+    }
+
+    // Memory-mapped object file
+    static class Reader implements Closeable {
+        final FileChannel ch;
+        final MappedByteBuffer map;
+        final int entry, segments, symbols, symbolBytes;
+
+        Reader(String file) throws IOException {
+            ch = FileChannel.open(Paths.get(file), StandardOpenOption.READ);
+            map = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            if(map.limit() < HEADER || map.getInt(0) != MAGIC) throw new IOException(file + ": not an object file");
+            entry = map.getInt(4);
+            segments = map.getInt(8);
+            symbols = map.getInt(12);
+            symbolBytes = map.getInt(16);
+        }
+
+        int segAddress(int i){ return map.getInt(HEADER + symbolBytes + i*12); }
+        int segWords(int i){ return map.getInt(HEADER + symbolBytes + i*12 + 4); }
+        int segOffset(int i){ return map.getInt(HEADER + symbolBytes + i*12 + 8); }
+
+        // highest address + 1
+        int size(){
+            int top = 0;
+            for(int i=0;i<segments;i++) top = Math.max(top, segAddress(i) + segWords(i));
+            return top;
+        }
+
+        // copies every segment to its address in memory (which must hold size() words)
+        void load(int[] memory){
+            IntBuffer words = map.duplicate().order(ByteOrder.BIG_ENDIAN).asIntBuffer(); // whole file as ints
+            for(int i=0;i<segments;i++){
+                words.position(segOffset(i)/4);
+                words.get(memory, segAddress(i), segWords(i));
+            }
+        }
+
+        // name -> address, read from the header
+        Map<String, Integer> symbolTable(){
+            Map<String, Integer> m = new LinkedHashMap<>();
+            int at = HEADER;
+            for(int i=0;i<symbols;i++){
+                int addr = map.getInt(at);
+                int len = map.getShort(at+4) & 0xffff;
+                byte[] name = new byte[len];
+                map.get(at+6, name);
+                m.put(new String(name, StandardCharsets.UTF_8), addr);
+                at += 6 + len;
+            }
+            return m;
+        }
+
+        public void close() throws IOException { ch.close(); }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length==0){
+            System.out.println("Usage: java ObjectFile <object_file>");
+            return;
+        }
+        try(Reader r = new Reader(args[0])){
+            System.out.println("entry " + r.entry + ", " + r.segments + " segments, " + r.symbols + " symbols");
+            for(Map.Entry<String, Integer> e : r.symbolTable().entrySet()) System.out.println("  " + e.getKey() + " " + e.getValue());
+            int[] mem = new int[r.size()];
+            r.load(mem);
+            for(int i=0;i<r.segments;i++){
+                int a = r.segAddress(i), n = r.segWords(i);
+                System.out.println("segment " + a + ".." + (a+n-1) + " (" + n + " words)");
+                for(int k=a;k<a+n;k++){
+                    int w = mem[k];
+                    System.out.println(String.format("  %d: + %02d %d %03d", k, opcode(w), reg(w), w&ADDR_MASK));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  OnePassAssembler.java
+  Assembles in a single pass over the source, without intermediate code: Pass1 hands every
+  IS/DL record straight to a Code buffer as a machine word. An operand whose symbol or
+  literal has no address yet is left 000 and its slot is linked into a backpatch chain for
+  that symbol/literal; the chain is patched when the label is reached or the literal pool
+  is placed at LTORG/END. A label defined again re-patches its whole chain, so the words
+  are always those of Pass1 + Pass2 (which use the last definition).
+
+  Usage:
+    javac *.java
+    java OnePassAssembler [--echo] asm_input.txt
+    java OnePassAssembler --object prog.obj asm_input.txt   (also writes the loadable image, see ObjectFile.java)
+
+  Produces SYMTAB.txt, LITTAB.txt, POOLTAB.txt and MACHINECODE.txt (no IC.txt).
+*/
+
+public class OnePassAssembler {
+
+    // Machine words in parallel int arrays; link threads the backpatch chains through the slots
+    static class Code {
+        int[] op = new int[1024], reg = new int[1024], addr = new int[1024], link = new int[1024];
+        int n;
+        IntTable symHead = new IntTable(), litHead = new IntTable(); // index -> first slot + 1, 0 = none
+        Map<Integer, String> regText; // slots whose register is written other than as its plain number
+
+        // one IC record of Pass1.emit
+        void record(Pass1 p, int opId, String r, char kind, String operand){
+            byte cls = OpTable.cls[opId];
+            if(cls == OpTable.AD) return;
+            if(n == op.length){
+                op = Arrays.copyOf(op, n*2); reg = Arrays.copyOf(reg, n*2);
+                addr = Arrays.copyOf(addr, n*2); link = Arrays.copyOf(link, n*2);
+            }
+            if(cls == OpTable.DL){
+                op[n] = 0; reg[n] = 0; link[n] = -1;
+                addr[n++] = kind=='C' ? Pass1.value(operand) : 0;
+                return;
+            }
+            op[n] = OpTable.opcode[opId];
+            reg[n] = 0;
+            if(r != null){
+                reg[n] = Diagnostics.parseInt(r);
+                if(reg[n] == Diagnostics.NAN){
+                    p.diag.error(p.file, p.lineNo, "A107", "register " + r + " is out of range, 0 used");
+                    reg[n] = 0;
+                    r = "0";
+                }
+                if(r.length()!=1 && !r.equals(String.valueOf(reg[n]))){ // e.g. "01": Pass2 keeps the text
+                    if(regText == null) regText = new HashMap<>();
+                    regText.put(n, r);
+                }
+            }
+            addr[n] = 0;
+            link[n] = -1;
+            if(kind=='S'){
+                int s = Integer.parseInt(operand);
+                if(p.symbols.addr(s) != -1) addr[n] = p.symbols.addr(s);
+                link[n] = symHead.get(s)-1;
+                symHead.put(s, n+1);
+            } else if(kind=='L'){
+                Pass1.Literal L = p.litList.get(Integer.parseInt(operand)-1);
+                if(L.addr != -1) addr[n] = L.addr;
+                link[n] = litHead.get(L.index)-1;
+                litHead.put(L.index, n+1);
+            } else if(kind=='C'){
+                addr[n] = Pass1.value(operand);
+            }
+            n++;
+        }
+
+        // a label got its (new) address: patch every word that refers to it
+        void resolveSymbol(int index, int a){
+            for(int i=symHead.get(index)-1; i>=0; i=link[i]) addr[i] = a;
+        }
+
+        // a literal was placed in its pool
+        void resolveLiteral(int index, int a){
+            for(int i=litHead.get(index)-1; i>=0; i=link[i]) addr[i] = a;
+        }
+
+        void write(MachineCodeWriter w) throws IOException {
+            for(int i=0;i<n;i++){
+                String r = regText != null ? regText.get(i) : null;
+                if(r != null) w.word(op[i], r, addr[i]);
+                else w.word(op[i], reg[i], addr[i]);
+            }
+        }
+
+        // hands the finished words to an object image, in record order
+        void image(ObjectFile.Image img){
+            for(int i=0;i<n;i++){
+                String r = regText != null ? regText.get(i) : null;
+                if(r != null) img.word(op[i], r, addr[i]);
+                else img.word(op[i], reg[i], addr[i]);
+            }
+        }
+
+        // same lines as Pass2.machine
+        List<String> lines(){
+            List<String> out = new ArrayList<>(n);
+            for(int i=0;i<n;i++){
+                String r = regText != null ? regText.get(i) : null;
+                out.add(MachineCodeWriter.text(op[i], r != null ? r : String.valueOf(reg[i]), addr[i]));
+            }
+            return out;
+        }
+    }
+
+    // Runs Pass1 in one-pass mode; the machine code is left in p.codeOut
+    static Pass1 assemble(BufferedReader source) throws IOException {
+        Pass1 p = new Pass1();
+        p.codeOut = new Code();
+        p.run(source);
+        return p;
+    }
+
+    public static void main(String[] args) throws Exception {
+        boolean echo = false;
+        String object = null;
+        int a = 0;
+        for(; a<args.length && args[a].startsWith("--"); a++){
+            if(args[a].equals("--echo")) echo = true;
+            else if(args[a].equals("--object") && a+1<args.length) object = args[++a];
+        }
+        args = Arrays.copyOfRange(args, a, args.length);
+        if(args.length==0){
+            System.out.println("Usage: java OnePassAssembler [--echo] [--object file] <assembly_input_file>");
+            return;
+        }
+        Pass1 p = new Pass1();
+        p.codeOut = new Code();
+        if(object != null) p.image = new ObjectFile.Image();
+        p.file = args[0];
+        try(BufferedReader br = new BufferedReader(new FileReader(args[0]), 1<<16)){
+            p.run(br);
+        }
+        if(object != null){
+            p.codeOut.image(p.image);
+            ObjectFile.write(object, p, p.image);
+        }
+        p.writeTables();
+        try(MachineCodeWriter w = new MachineCodeWriter("MACHINECODE.txt", echo ? System.out : null)){
+            p.codeOut.write(w);
+        }
+        System.out.println("SYMTAB.txt, LITTAB.txt, POOLTAB.txt, MACHINECODE.txt written (" + p.codeOut.n + " words, no IC)");
+        p.diag.print(System.err);
+        if(p.diag.errors() > 0) System.exit(1);
+    }
+}
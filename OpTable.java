@@ -0,0 +1,139 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  OpTable.java
+  Mnemonic table of the assembler. Every mnemonic is an int id into parallel arrays (class,
+  numeric opcode, IC head text such as "(IS,04)"), so Pass1 and the one-pass assembler
+  dispatch on ints and hand numeric class/opcode values to the binary IC and the code buffer.
+  find() looks a token up case-insensitively straight from a char buffer, through an
+  open-addressing table keyed by the hash of the upper-cased chars, without allocating.
+
+  Site-specific instructions are imperative statements and assemble like ADD. Add them before
+  assembling, from code or from a file with one "NAME opcode" per line ('#' starts a comment):
+    OpTable.define("HALT", 11);
+    java Pass1 --optab site.ops asm_input.txt
+  The arrays have a fixed capacity, so defining more mnemonics never changes the lookup path.
+*/
+
+public class OpTable {
+    static final byte IS = BinaryIC.CLS_IS, AD = BinaryIC.CLS_AD, DL = BinaryIC.CLS_DL;
+
+    static final int CAPACITY = 256;
+    static final int MASK = 1023; // slots: 4x capacity, power of two
+    static final String[] name = new String[CAPACITY];
+    static final byte[] cls = new byte[CAPACITY];
+    static final int[] opcode = new int[CAPACITY];
+    static final String[] code = new String[CAPACITY]; // opcode as in the IC, two digits
+    static final String[] head = new String[CAPACITY]; // "(IS,04)"
+    static final int[] slots = new int[MASK+1]; // id+1, 0 = empty
+    static int size, maxLen;
+
+    // ids of the built-in mnemonics, in the order of the original opTab
+    static final int STOP = add("STOP", IS, 0), ADD = add("ADD", IS, 1), SUB = add("SUB", IS, 2),
+            MULT = add("MULT", IS, 3), MOVER = add("MOVER", IS, 4), MOVEM = add("MOVEM", IS, 5),
+            COMP = add("COMP", IS, 6), BC = add("BC", IS, 7), DIV = add("DIV", IS, 8),
+            READ = add("READ", IS, 9), PRINT = add("PRINT", IS, 10);
+    static final int START = add("START", AD, 1), END = add("END", AD, 2), ORIGIN = add("ORIGIN", AD, 3),
+            EQU = add("EQU", AD, 4), LTORG = add("LTORG", AD, 5);
+    static final int DC = add("DC", DL, 1), DS = add("DS", DL, 2);
+
+    // BC condition names by code (the register field of BC); NZ is 0, which Pass1 wrote for
+    // every name before they were mapped
+    static final String[] CONDITIONS = {"NZ", "LT", "LE", "EQ", "GT", "GE", "ANY"};
+
+    // code of a BC condition name, -1 if s is not one
+    static int condition(String s){
+        for(int cc=0;cc<CONDITIONS.length;cc++) if(CONDITIONS[cc].equalsIgnoreCase(s)) return cc;
+        return -1;
+    }
+
+    private static synchronized int add(String n, byte c, int op){
+        if(size == CAPACITY) throw new IllegalStateException("opcode table full (" + CAPACITY + " mnemonics)");
+        int id = size;
+        name[id] = n;
+        cls[id] = c;
+        opcode[id] = op;
+        code[id] = (op < 10 ? "0" : "") + op;
+        head[id] = "(" + BinaryIC.className(c) + "," + code[id] + ")";
+        int k = hash(n)&MASK;
+        while(slots[k] != 0) k = (k+1)&MASK;
+        slots[k] = id+1;
+        maxLen = Math.max(maxLen, n.length());
+        size++; // last, so a reader never sees a half-filled entry through find()
+        return id;
+    }
+
+    // Adds an imperative statement; call before assembling
+    static int define(String mnemonic, int op){
+        String n = mnemonic.toUpperCase(Locale.ROOT);
+        if(n.isEmpty()) throw new IllegalArgumentException("empty mnemonic");
+        for(int i=0;i<n.length();i++){
+            char c = n.charAt(i);
+            if(!(c>='A' && c<='Z') && !(c>='0' && c<='9')) throw new IllegalArgumentException("bad mnemonic " + mnemonic);
+        }
+        if(find(n) >= 0) throw new IllegalArgumentException(n + " is already defined");
+        if(op < 0 || op > 99) throw new IllegalArgumentException(n + ": opcode " + op + " outside 0..99");
+        return add(n, IS, op);
+    }
+
+    static void load(String file) throws IOException {
+        try(BufferedReader br = new BufferedReader(new FileReader(file))){
+            String line;
+            int no = 0;
+            while((line = br.readLine()) != null){
+                no++;
+                int hash = line.indexOf('#');
+                if(hash >= 0) line = line.substring(0, hash);
+                line = line.trim();
+                if(line.isEmpty()) continue;
+                String[] f = line.split("\\s+");
+                if(f.length != 2) throw new IOException(file + ":" + no + ": expected 'NAME opcode'");
+                try{
+                    define(f[0], Integer.parseInt(f[1]));
+                } catch(IllegalArgumentException e){
+                    throw new IOException(file + ":" + no + ": " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    static char up(char c){
+        if(c < 0x80) return c>='a' && c<='z' ? (char)(c-32) : c;
+        return Character.toUpperCase(c);
+    }
+
+    static int hash(String n){
+        int h = 0;
+        for(int i=0;i<n.length();i++) h = 31*h + n.charAt(i);
+        return h ^ (h>>>7);
+    }
+
+    // id of the mnemonic in b[s,e), ignoring case, or -1
+    static int find(char[] b, int s, int e){
+        int len = e-s;
+        if(len == 0 || len > maxLen) return -1;
+        int h = 0;
+        for(int i=s;i<e;i++) h = 31*h + up(b[i]);
+        for(int k=(h ^ (h>>>7))&MASK; ; k=(k+1)&MASK){
+            int id = slots[k]-1;
+            if(id < 0) return -1;
+            String n = name[id];
+            if(n.length() != len) continue;
+            int i = 0;
+            while(i<len && up(b[s+i]) == n.charAt(i)) i++;
+            if(i == len) return id;
+        }
+    }
+
+    static int find(String s){
+        return find(s.toCharArray(), 0, s.length());
+    }
+
+    // mnemonics in the order the old HashMap-based opTab printed them (Pass1's OPCODE TABLE)
+    static List<Integer> printOrder(){
+        Map<String, Integer> m = new HashMap<>();
+        for(int id=0;id<size;id++) m.put(name[id], id);
+        return new ArrayList<>(m.values());
+    }
+}
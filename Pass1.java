@@ -1,11 +1,21 @@
 import java.io.*;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /*
   Pass1.java
   Usage:
     javac Pass1.java
     java Pass1 asm_input.txt
+    java Pass1 --stream asm_input.txt   (IC lines written as produced, not kept in memory)
+    java Pass1 --binary asm_input.txt   (also writes IC.bin, see BinaryIC.java; IC.txt kept as debug export)
+    java Pass1 --parallel asm_input.txt (chunks classified on all cores, same output; see runParallel)
+    java Pass1 --mmap asm_input.txt     (source memory-mapped and scanned as bytes, see MappedText.java)
+    java Pass1 --optab site.ops asm_input.txt (extra instructions, see OpTable.java)
+    java Pass1 --stats asm_input.txt    (counters and timers on stderr and as JFR events, see Stats.java)
+    java Pass1 --fail-fast asm_input.txt (stop at the first error instead of reporting all, see Diagnostics.java)
 
   Produces:
     IC.txt         -> intermediate code
@@ -16,348 +26,832 @@ import java.util.*;
 */
 
 public class Pass1 {
-    static class Symbol { String name; int addr; int length; int index; public Symbol(String n,int i){name=n; index=i; addr=-1; length=1;} }
     static class Literal { String lit; int addr; int index; public Literal(String l,int i){lit=l; index=i; addr=-1;} }
 
-    // Opcode table: mnemonic -> (class, opcode)
-    static Map<String, String[]> opTab = new HashMap<>();
-    static {
-        // class codes: IS (Imperative), AD (Assembler Dir), DL (Declarative)
-        opTab.put("STOP", new String[]{"IS","00"});
-        opTab.put("ADD",  new String[]{"IS","01"});
-        opTab.put("SUB",  new String[]{"IS","02"});
-        opTab.put("MULT", new String[]{"IS","03"});
-        opTab.put("MOVER",new String[]{"IS","04"});
-        opTab.put("MOVEM",new String[]{"IS","05"});
-        opTab.put("COMP", new String[]{"IS","06"});
-        opTab.put("BC",   new String[]{"IS","07"});
-        opTab.put("DIV",  new String[]{"IS","08"});
-        opTab.put("READ", new String[]{"IS","09"});
-        opTab.put("PRINT",new String[]{"IS","10"});
-
-        opTab.put("START", new String[]{"AD","01"});
-        opTab.put("END",   new String[]{"AD","02"});
-        opTab.put("ORIGIN",new String[]{"AD","03"});
-        opTab.put("EQU",   new String[]{"AD","04"});
-        opTab.put("LTORG", new String[]{"AD","05"});
-
-        opTab.put("DC", new String[]{"DL","01"});
-        opTab.put("DS", new String[]{"DL","02"});
+    // Hand-written tokenizer: splits a line on whitespace and commas into slices of a reusable char buffer.
+    // Same tokens as line.replaceAll(",", " ").split("\\s+") but without regex; Strings are built only on demand.
+    static class Tokenizer {
+        char[] buf = new char[128];
+        int[] start = new int[8];
+        int[] end = new int[8];
+        int count;
+
+        static boolean isDelim(char c){
+            return c==' ' || c=='\t' || c=='\n' || c=='\r' || c=='\f' || c==0x0B || c==',';
+        }
+
+        void scan(String line){
+            int n = line.length();
+            if(n > buf.length) buf = new char[Math.max(n, buf.length*2)];
+            line.getChars(0, n, buf, 0);
+            split(n);
+        }
+
+        // the current line of an ASCII MappedText, read byte by byte without building a String
+        void scan(MappedText t){
+            int n = t.end - t.start;
+            if(n > buf.length) buf = new char[Math.max(n, buf.length*2)];
+            for(int k=0;k<n;k++) buf[k] = (char)t.at(t.start+k);
+            split(n);
+        }
+
+        private void split(int n){
+            count = 0;
+            int i = 0;
+            // split() keeps a leading empty token when the line starts with a delimiter (only ',' survives trim)
+            if(n>0 && isDelim(buf[0])){ add(0,0); }
+            while(i<n){
+                while(i<n && isDelim(buf[i])) i++;
+                if(i>=n) break;
+                int s = i;
+                while(i<n && !isDelim(buf[i])) i++;
+                add(s,i);
+            }
+        }
+
+        private void add(int s,int e){
+            if(count==start.length){
+                start = Arrays.copyOf(start, count*2);
+                end = Arrays.copyOf(end, count*2);
+            }
+            start[count]=s; end[count]=e; count++;
+        }
+
+        String text(int i){ return i<count ? new String(buf, start[i], end[i]-start[i]) : ""; }
+
+        // Tests on token i that text(i) would answer, without building it; a missing token is empty
+        boolean empty(int i){ return i>=count || start[i]==end[i]; }
+
+        char first(int i){ return empty(i) ? 0 : buf[start[i]]; }
+
+        boolean isSingleLetter(int i){
+            char c = first(i);
+            return end[i]-start[i]==1 && ((c>='A' && c<='Z') || (c>='a' && c<='z'));
+        }
+
+        boolean isDigits(int i){
+            if(empty(i)) return false;
+            for(int k=start[i];k<end[i];k++) if(buf[k]<'0' || buf[k]>'9') return false;
+            return true;
+        }
+
+        // index of token i in the symbol table, 0 if it is not there
+        int symbol(SymbolTable t, int i){ return t.find(buf, start[i], end[i]); }
+
+        // OpTable id of token i (case-insensitive) or -1, without allocating
+        int op(int i){
+            return i<count ? OpTable.find(buf, start[i], end[i]) : -1;
+        }
+    }
+
+    // register field of BC cond, target: the code of a condition name or digits as written;
+    // null when cond is neither
+    static String bcCondition(String cond){
+        if(isDigits(cond)) return cond;
+        int cc = OpTable.condition(cond);
+        return cc < 0 ? null : String.valueOf(cc);
     }
 
-    static Map<String, Symbol> symMap = new LinkedHashMap<>();
-    static List<Symbol> symList = new ArrayList<>();
-    static Map<String, Literal> litMap = new LinkedHashMap<>();
-    static List<Literal> litList = new ArrayList<>();
-    static List<Integer> poolTable = new ArrayList<>(); // literal indices (1-based) where each pool starts
+    static boolean isDigits(String s){
+        if(s.isEmpty()) return false;
+        for(int i=0;i<s.length();i++) if(s.charAt(i)<'0' || s.charAt(i)>'9') return false;
+        return true;
+    }
 
-    static List<String> IC = new ArrayList<>(); // intermediate code lines
+    static String stripQuotes(String s){
+        if(s.indexOf('\'')<0) return s;
+        StringBuilder sb = new StringBuilder(s.length());
+        for(int i=0;i<s.length();i++) if(s.charAt(i)!='\'') sb.append(s.charAt(i));
+        return sb.toString();
+    }
 
-    public static void main(String[] args) throws Exception {
-        if(args.length==0){
-            System.out.println("Usage: java Pass1 <assembly_input_file>");
+    // Mnemonics, classes and opcodes: see OpTable.java
+
+    // Per-assembly state: one Pass1 instance per source, so several assemblies can run in one JVM
+    SymbolTable symbols = new SymbolTable(); // indices 1..size in order of first appearance
+    Map<String, Literal> litMap = new HashMap<>(); // literals of the open pool only; a new map per pool
+    List<Literal> litList = new ArrayList<>(); // all literals, pool after pool
+    List<Integer> poolTable = new ArrayList<>(); // literal indices (1-based) where each pool starts
+    int poolStart; // position in litList of the first literal of the open pool
+
+    List<String> IC = new ArrayList<>(); // intermediate code lines
+    PrintWriter icOut; // when streaming, IC lines go straight to IC.txt instead of the IC list
+    BinaryIC.Writer binOut; // when set, every IC record is also written to IC.bin
+    OnePassAssembler.Code codeOut; // when set, records become machine words there and no IC is kept
+    ObjectFile.Image image; // when set, the address of every IS/DL word is recorded for the object file
+    Stats stats; // --stats; null when off
+    Diagnostics diag = new Diagnostics(false);
+    String file = "<input>"; // source name in diagnostics
+    int lineNo; // 1-based number of the line being processed
+
+    // Stats indices
+    static final int ST_PASS = 0, ST_LINES = 1, ST_TOKENIZE = 2, ST_LOOKUP = 3, ST_SYM_INSERT = 4,
+            ST_LIT_INSERT = 5, ST_POOLS = 6, ST_POOL_LITERALS = 7, ST_WRITE = 8;
+
+    static Stats newStats(){
+        return new Stats("pass1", "pass 1", "lines", "tokenize", "opcode lookup", "symbol inserts",
+                "literal inserts", "pool placement", "literals placed", "table/IC writes");
+    }
+    PrintStream echo; // when set, each source line is printed as it is read (CLI)
+
+    final Tokenizer tok = new Tokenizer();
+    int LC = 0; // location counter
+    int litCounter = 0;
+    boolean firstLine = true;
+
+    int lastOp = -1; // OpTable id of the last statement processed (-1 for blank lines and unknown mnemonics)
+
+    // Undo log for incremental reassembly (see IncrementalAssembler): pairs (ref, old address)
+    // for every address overwritten, ref = symbol index or -literal index. null = not recorded.
+    int[] undo;
+    int undoSize;
+
+    void logUndo(int ref, int old){
+        if(undo == null) return;
+        if(undoSize+2 > undo.length) undo = Arrays.copyOf(undo, Math.max(16, undo.length*2));
+        undo[undoSize++] = ref;
+        undo[undoSize++] = old;
+    }
+
+    void emit(String ic){
+        if(codeOut != null) return;
+        if(icOut != null) icOut.println(ic);
+        else IC.add(ic);
+    }
+
+    // one IC record: (cls,code) of OpTable entry op, then optional (reg) and optional (kind,operand)
+    void emit(int op, String reg, char kind, String operand) throws IOException {
+        if(image != null){
+            if(op == OpTable.START) image.start(LC);
+            else if(op == OpTable.DS) image.reserve(LC);
+            else if(OpTable.cls[op] != OpTable.AD) image.place(LC);
+        }
+        if(codeOut != null){
+            codeOut.record(this, op, reg, kind, operand);
             return;
         }
+        if(binOut != null){
+            binOut.write(OpTable.cls[op], OpTable.opcode[op], (byte)kind, reg!=null ? BinaryIC.F_REG : 0,
+                    reg!=null ? value(reg) : 0, kind!=0 ? value(operand) : 0, reg!=null ? BinaryIC.regWidth(reg) : 0);
+        }
+        emit(OpTable.head[op] + (reg!=null ? "(" + reg + ")" : "") + (kind!=0 ? "(" + kind + "," + operand + ")" : ""));
+    }
 
-        String infile = args[0];
-        BufferedReader br = new BufferedReader(new FileReader(infile));
-        String line;
-        int LC = 0; // location counter
-        int litCounter = 0;
-        int symCounter = 0;
-        boolean firstLine = true;
-
-        // Keep a temporary list of literals that have been encountered since last pool started
-        List<Literal> currentPoolLiterals = new ArrayList<>();
+    // numeric operand already checked (and reported) by statement(); 0 when it was bad
+    static int value(String operand){
+        int v = Diagnostics.parseInt(operand);
+        return v == Diagnostics.NAN ? 0 : v;
+    }
 
-        while((line = br.readLine()) != null){
-            line = line.trim();
-            if(line.isEmpty()) continue;
+    public static void main(String[] args) throws Exception {
+        boolean stream = false, binary = false, parallel = false, mmap = false, stats = false, failFast = false;
+        int a = 0;
+        for(; a<args.length && args[a].startsWith("--"); a++){
+            if(args[a].equals("--optab") && a+1<args.length) OpTable.load(args[++a]);
+            if(args[a].equals("--stream")) stream = true;
+            else if(args[a].equals("--binary")) binary = true;
+            else if(args[a].equals("--parallel")) parallel = true;
+            else if(args[a].equals("--mmap")) mmap = true;
+            else if(args[a].equals("--stats")) stats = true;
+            else if(args[a].equals("--fail-fast")) failFast = true;
+        }
+        if(a>=args.length){
+            System.out.println("Usage: java Pass1 [--stream] [--binary] [--parallel] [--mmap] [--optab file] [--stats] [--fail-fast] <assembly_input_file>");
+            return;
+        }
 
-            // print program line as sample wants
-            System.out.println(line);
-
-            // tokenization: split by spaces and commas but keep commas removed, e.g. "MOVER A, B"
-            String[] parts = line.replaceAll(",", " ").split("\\s+");
-            // if a label present (first token and next token is an opcode/directive or mnemonic), detect it as label if not mnemonic
-            String label = "";
-            String mnemonic = "";
-            String operand1 = "";
-            String operand2 = "";
-
-            if(parts.length >= 1) mnemonic = parts[0];
-            if(parts.length >= 2) operand1 = parts[1];
-            if(parts.length >= 3) operand2 = parts[2];
-
-            // If first token is a label (i.e., not an opcode or directive), we detect by checking if it's known mnemonic; if not and more tokens exist
-            boolean firstIsLabel = false;
-            if(parts.length>=2 && !opTab.containsKey(parts[0].toUpperCase())){
-                // treat as label
-                firstIsLabel = true;
-                label = parts[0];
-                mnemonic = parts.length>1? parts[1] : "";
-                operand1 = parts.length>2? parts[2] : "";
-                operand2 = parts.length>3? parts[3] : "";
+        Pass1 p = new Pass1();
+        p.echo = System.out;
+        p.diag = new Diagnostics(failFast);
+        p.file = args[a];
+        if(stats) p.stats = newStats();
+        if(stats) p.stats.begin(ST_PASS);
+        if(binary) p.binOut = new BinaryIC.Writer("IC.bin");
+        if(stream) p.icOut = new PrintWriter(new BufferedWriter(new FileWriter("IC.txt"), 1<<16));
+        try{
+            if(mmap){
+                p.runMapped(args[a]);
+            } else if(parallel){
+                p.runParallel(Files.readAllLines(Paths.get(args[a]), java.nio.charset.Charset.defaultCharset()), Runtime.getRuntime().availableProcessors());
+            } else {
+                try(BufferedReader br = new BufferedReader(new FileReader(args[a]))){
+                    p.run(br);
+                }
             }
+        } catch(Diagnostics.Failure e){
+            p.diag.print(System.err); // fail-fast: no tables for a source with errors
+            System.exit(1);
+        }
+        if(stats) p.stats.end(ST_PASS);
+        p.writeTables();
+        p.printTables(System.out);
+        if(stats){
+            p.stats.report(System.err);
+            p.stats.commit();
+        }
+        p.diag.print(System.err);
+        if(p.diag.errors() > 0) System.exit(1);
+    }
 
-            String mU = mnemonic.toUpperCase();
+    // Runs pass 1 over a whole source; tables and IC are left in this instance
+    void run(BufferedReader br) throws IOException {
+        String line;
+        while((line = br.readLine()) != null){
+            processLine(line);
+        }
+        finish();
+    }
 
-            if(firstLine){
-                // Expect START
-                if(mU.equals("START")){
-                    // operand1 may be starting address
-                    int startAddr = 0;
-                    if(operand1 != null && !operand1.equals("")) {
-                        try { startAddr = Integer.parseInt(operand1); } catch(Exception e){}
-                    }
-                    LC = startAddr;
-                    IC.add("(AD,01)(C,"+LC+")");
-                    firstLine = false;
+    // Same as run() over a memory-mapped source: lines are found and tokenized as bytes, so no
+    // String is built per line; lines with non-ASCII bytes are decoded and go through processLine.
+    void runMapped(String file) throws IOException {
+        try(MappedText t = new MappedText(file)){
+            while(t.next()){
+                if(!t.ascii){
+                    processLine(t.string());
                     continue;
+                }
+                lastOp = -1;
+                lineNo++;
+                if(t.start == t.end) continue;
+                if(echo != null) echo.println(t.text(t.start, t.end));
+                if(stats != null){
+                    long t0 = System.nanoTime();
+                    tok.scan(t);
+                    stats.time(ST_TOKENIZE, t0);
                 } else {
-                    firstLine = false; // still proceed
+                    tok.scan(t);
                 }
+                statement();
             }
+        }
+        finish();
+    }
 
-            // If label exists, enter symbol with current LC (or update if already present)
-            if(firstIsLabel && !label.equals("")){
-                if(!symMap.containsKey(label)){
-                    Symbol s = new Symbol(label, ++symCounter);
-                    s.addr = LC;
-                    symMap.put(label, s);
-                    symList.add(s);
-                } else {
-                    Symbol s = symMap.get(label);
-                    s.addr = LC;
+    void processLine(String line) throws IOException {
+        lastOp = -1;
+        lineNo++;
+        line = line.trim();
+        if(line.isEmpty()) return;
+
+        // print program line as sample wants
+        if(echo != null) echo.println(line);
+
+        // tokenization: split by spaces and commas but keep commas removed, e.g. "MOVER A, B"
+        if(stats != null){
+            long t0 = System.nanoTime();
+            tok.scan(line);
+            stats.time(ST_TOKENIZE, t0);
+        } else {
+            tok.scan(line);
+        }
+        statement();
+    }
+
+    // Pass 1 of the statement held in tok
+    void statement() throws IOException {
+        // if a label present (first token and next token is an opcode/directive or mnemonic), detect it as label if not mnemonic
+        // Operands are read as token slices; a String is built only where one is kept or reported
+        // If first token is a label (i.e., not an opcode or directive), we detect by checking if it's known mnemonic; if not and more tokens exist
+        boolean firstIsLabel = false;
+        int m = 0;
+        long t0 = stats != null ? System.nanoTime() : 0;
+        int op = tok.op(0);
+        if(tok.count>=2 && op<0){
+            // treat as label
+            firstIsLabel = true;
+            m = 1;
+            op = tok.op(1);
+        }
+        if(stats != null){
+            stats.time(ST_LOOKUP, t0);
+            stats.inc(ST_LINES);
+        }
+        int o1 = m+1, o2 = m+2; // operand tokens
+        lastOp = op;
+
+        if(firstLine){
+            // Expect START
+            if(op == OpTable.START){
+                // operand1 may be starting address
+                int startAddr = 0;
+                if(!tok.empty(o1)) {
+                    String operand1 = tok.text(o1);
+                    startAddr = Diagnostics.parseInt(operand1);
+                    if(startAddr == Diagnostics.NAN){
+                        diag.error(file, lineNo, "A101", "START address '" + operand1 + "' is not a number, 0 used");
+                        startAddr = 0;
+                    }
                 }
+                LC = startAddr;
+                emit(OpTable.START, null, 'C', String.valueOf(LC));
+                firstLine = false;
+                return;
+            } else {
+                firstLine = false; // still proceed
             }
+        }
 
-            if(mU.equals("LTORG") || mU.equals("END")){
-                // AD directive
-                IC.add("(AD," + opTab.get(mU)[1] + ")");
-                // Assign addresses to all literals in current pool
-                if(!currentPoolLiterals.isEmpty()){
-                    for(Literal L : currentPoolLiterals){
-                        if(L.addr == -1){
-                            L.addr = LC;
-                            LC++;
-                        }
+        // If label exists, enter symbol with current LC (or update if already present)
+        if(firstIsLabel && !tok.empty(0)){
+            int s = tok.symbol(symbols, 0);
+            if(s == 0){
+                s = symbols.add(tok.text(0));
+                symbols.setAddr(s, LC);
+                symbols.setLine(s, lineNo);
+                if(stats != null) stats.inc(ST_SYM_INSERT);
+            } else {
+                logUndo(s, symbols.addr(s));
+                symbols.setAddr(s, LC);
+                if(codeOut != null) codeOut.resolveSymbol(s, LC);
+            }
+        }
+
+        if(op == OpTable.LTORG || op == OpTable.END){
+            // AD directive
+            emit(op, null, (char)0, null);
+            placePool();
+            return;
+        }
+
+        if(op >= 0){
+            byte cls = OpTable.cls[op];
+
+            if(cls == OpTable.IS){
+                // Imperative Statement
+                // For uniform IC format: (IS,opcode)(r)(S,x) or (L,x) or (C,x)
+                String regField = "0";
+
+                // if operand1 exists and is register (we assume numeric or A,B mapping). We'll allow registers by name like A,B mapped to numbers
+                if(!tok.empty(o1)){
+                    // if operand1 is a register like A/1, or numeric register mapping, support R0..R7 by reading if it's a single letter
+                    if(tok.isSingleLetter(o1)) {
+                        // map A->1, B->2, C->3 etc. (simple)
+                        regField = String.valueOf((Character.toUpperCase(tok.first(o1)) - 'A') + 1);
+                    } else if(tok.isDigits(o1)) {
+                        regField = tok.text(o1);
+                    } else {
+                        // it might be first operand is a symbol or literal and register is absent; we'll handle later
                     }
-                    // add next pool start index to pool table if there are remaining literals later
-                    poolTable.add( (litList.size()>0 ? (litList.get(0).index) : 1) ); // not very critical here
-                    // Clear current pool
-                    currentPoolLiterals.clear();
-                } else {
-                    // nothing
                 }
-                // For END, also assign any remaining literals (if END)
-                if(mU.equals("END")){
-                    // assign any unassigned literals in full littab
-                    for(Literal L : litList){
-                        if(L.addr == -1){
-                            L.addr = LC;
-                            LC++;
-                        }
+                if(op == OpTable.BC && !tok.empty(o2)){
+                    String cond = tok.text(o1);
+                    regField = bcCondition(cond);
+                    if(regField == null){
+                        diag.error(file, lineNo, "A106", "BC condition '" + cond + "' is not one of NZ, LT, LE, EQ, GT, GE, ANY; NZ used");
+                        regField = "0";
                     }
                 }
-                continue;
-            }
+                if(Diagnostics.parseInt(regField) == Diagnostics.NAN){ // digits beyond int range
+                    diag.error(file, lineNo, "A107", "register " + regField + " is out of range, 0 used");
+                    regField = "0";
+                }
 
-            if(opTab.containsKey(mU)){
-                String cls = opTab.get(mU)[0];
-                String code = opTab.get(mU)[1];
-
-                if(cls.equals("IS")){
-                    // Imperative Statement
-                    // For uniform IC format: (IS,opcode)(r)(S,x) or (L,x) or (C,x)
-                    String regField = "0";
-                    String operandField = "";
-
-                    // if operand1 exists and is register (we assume numeric or A,B mapping). We'll allow registers by name like A,B mapped to numbers
-                    if(operand1 != null && !operand1.equals("")){
-                        // if operand1 is a register like A/1, or numeric register mapping, support R0..R7 by reading if it's a single letter
-                        String s = operand1.replaceAll("\\s+","").replaceAll(",","");
-                        if(s.matches("[A-Za-z]")) {
-                            // map A->1, B->2, C->3 etc. (simple)
-                            regField = String.valueOf((s.toUpperCase().charAt(0) - 'A') + 1);
-                        } else if(s.matches("\\d+")) {
-                            regField = s;
-                        } else {
-                            // it might be first operand is a symbol or literal and register is absent; we'll handle later
-                        }
+                // Determine second operand (symbol or literal or constant): the token of operand2
+                int opnd = tok.empty(o2) ? -1 : o2;
+                // if no operand2 but operand1 is not a register or is of form symbol, decide properly:
+                if(opnd < 0 && !tok.empty(o1)){
+                    // if operand1 is literal (starts with =) or is symbol
+                    if(tok.first(o1) == '=' || !tok.isSingleLetter(o1)) {
+                        opnd = o1;
+                    } else {
+                        // if operand1 is a single letter and we earlier treated it as register, then there's no operand
                     }
+                }
 
-                    // Determine second operand (symbol or literal or constant)
-                    String opnd = operand2;
-                    // if no operand2 but operand1 is not a register or is of form symbol, decide properly:
-                    if((opnd==null || opnd.equals("")) && operand1!=null && !operand1.equals("")){
-                        // if operand1 is literal (starts with =) or is symbol
-                        if(operand1.startsWith("=") || !operand1.matches("[A-Za-z]")) {
-                            opnd = operand1;
-                        } else {
-                            // if operand1 is a single letter and we earlier treated it as register, then there's no operand
-                            // set opnd blank
-                        }
+                // If opnd is literal starting with '='
+                if(opnd >= 0 && tok.first(opnd) == '='){
+                    Literal L = literal(tok.text(opnd));
+                    emit(op, regField, 'L', String.valueOf(L.index));
+                } else if(opnd >= 0){
+                    // symbol, looked up in place; the name is built only for a new one
+                    int S = tok.symbol(symbols, opnd);
+                    if(S == 0){
+                        S = symbols.add(tok.text(opnd));
+                        symbols.setLine(S, lineNo);
+                        if(stats != null) stats.inc(ST_SYM_INSERT);
                     }
-
-                    // If opnd is literal starting with '='
-                    if(opnd!=null && opnd.startsWith("=")){
-                        String lit = opnd;
-                        if(!litMap.containsKey(lit)){
-                            Literal L = new Literal(lit, ++litCounter);
-                            litMap.put(lit,L);
-                            litList.add(L);
-                        }
-                        Literal L = litMap.get(lit);
-                        currentPoolLiterals.add(L);
-                        IC.add("(IS,"+code+")"+"("+regField+")(L,"+L.index+")");
-                    } else if(opnd!=null && !opnd.equals("")){
-                        // symbol
-                        String sym = opnd;
-                        if(!symMap.containsKey(sym)){
-                            Symbol S = new Symbol(sym, ++symCounter);
-                            symMap.put(sym, S);
-                            symList.add(S);
-                        }
-                        Symbol S = symMap.get(sym);
-                        IC.add("(IS,"+code+")"+"("+regField+")(S,"+S.index+")");
-                    } else {
-                        // no operand (e.g., STOP)
-                        IC.add("(IS,"+code+")");
+                    emit(op, regField, 'S', String.valueOf(S));
+                } else {
+                    // no operand (e.g., STOP)
+                    emit(op, null, (char)0, null);
+                }
+                LC++;
+            } else if(cls == OpTable.DL){
+                // Declarative: DC / DS
+                if(op == OpTable.DC){
+                    // operand1 should be constant or 'x' style
+                    String c = stripQuotes(tok.text(o1));
+                    int v = Diagnostics.parseInt(c);
+                    if(v == Diagnostics.NAN){
+                        diag.error(file, lineNo, "A103", "DC constant '" + c + "' is not a number, 0 used");
+                        v = 0;
                     }
+                    emit(op, null, 'C', String.valueOf(v)); // as parsed, so IC.txt and IC.bin agree
                     LC++;
-                } else if(cls.equals("DL")){
-                    // Declarative: DC / DS
-                    if(mU.equals("DC")){
-                        // operand1 should be constant or 'x' style
-                        String c = operand1.replaceAll("'", "");
-                        IC.add("(DL,01)(C,"+c+")");
-                        LC++;
-                    } else if(mU.equals("DS")){
-                        String c = "1";
-                        if(operand1!=null && !operand1.equals("")) {
-                            c = operand1;
-                        }
-                        IC.add("(DL,02)(C,"+c+")");
-                        // create symbol entry if label exists (handled above)
-                        LC += Integer.parseInt(c);
+                } else if(op == OpTable.DS){
+                    String c = "1";
+                    if(!tok.empty(o1)) {
+                        c = tok.text(o1);
                     }
-                } else if(cls.equals("AD")){
-                    // assembler directive other than START/END/LTORG handled earlier
-                    if(mU.equals("ORIGIN")){
-                        // ORIGIN operand like SYMBOL+2
-                        String expr = operand1;
-                        int newlc = LC;
-                        if(expr.contains("+")){
-                            String[] t = expr.split("\\+");
-                            String sym = t[0];
-                            int val = Integer.parseInt(t[1]);
-                            if(symMap.containsKey(sym) && symMap.get(sym).addr!=-1) newlc = symMap.get(sym).addr + val;
-                        } else if(symMap.containsKey(expr) && symMap.get(expr).addr!=-1){
-                            newlc = symMap.get(expr).addr;
-                        } else {
-                            try{ newlc = Integer.parseInt(expr);}catch(Exception e){}
-                        }
-                        IC.add("(AD,03)(S,"+ (symMap.containsKey(expr)? symMap.get(expr).index : 0) +")+"+ (expr.contains("+") ? expr.substring(expr.indexOf("+")) : ("0")) );
-                        LC = newlc;
-                    } else if(mU.equals("EQU")){
-                        // label EQU operand => set symbol value
-                        // Not fully implemented; add a simple placeholder
-                        IC.add("(AD,04)");
+                    int n = Diagnostics.parseInt(c);
+                    if(n == Diagnostics.NAN || n < 0){
+                        diag.error(file, lineNo, "A102", "DS size '" + c + "' is not a non-negative number, no space reserved");
+                        n = 0;
+                    }
+                    emit(op, null, 'C', String.valueOf(n));
+                    // create symbol entry if label exists (handled above)
+                    LC += n;
+                }
+            } else if(cls == OpTable.AD){
+                // assembler directive other than START/END/LTORG handled earlier
+                if(op == OpTable.ORIGIN){
+                    // ORIGIN operand like SYMBOL+2
+                    String expr = tok.text(o1);
+                    int newlc = LC;
+                    int val = 0;
+                    if(expr.contains("+")){
+                        String[] t = expr.split("\\+");
+                        String sym = t[0];
+                        val = t.length == 2 ? Diagnostics.parseInt(t[1]) : Diagnostics.NAN;
+                        int S = symbols.find(sym);
+                        if(val == Diagnostics.NAN){
+                            diag.error(file, lineNo, "A104", "ORIGIN offset in '" + expr + "' is not a number, LC unchanged");
+                            val = 0;
+                        } else if(S != 0 && symbols.addr(S)!=-1) newlc = symbols.addr(S) + val;
+                        else diag.error(file, lineNo, "A104", "ORIGIN symbol '" + sym + "' is not defined yet, LC unchanged");
                     } else {
-                        IC.add("(AD," + opTab.get(mU)[1] + ")");
+                        int S = symbols.find(expr);
+                        int v = Diagnostics.parseInt(expr);
+                        if(S != 0 && symbols.addr(S)!=-1) newlc = symbols.addr(S);
+                        else if(v != Diagnostics.NAN) newlc = v;
+                        else diag.error(file, lineNo, "A104", "ORIGIN operand '" + expr + "' is neither a number nor a defined symbol, LC unchanged");
                     }
+                    int sidx = symbols.find(expr);
+                    if(binOut != null){
+                        binOut.write(BinaryIC.CLS_AD, 3, (byte)'S', expr.contains("+") ? BinaryIC.F_PLUS : 0, 0, sidx, val);
+                    }
+                    emit("(AD,03)(S,"+ sidx +")+"+ (expr.contains("+") ? "+" + val : "0"));
+                    LC = newlc;
+                } else if(op == OpTable.EQU){
+                    // label EQU operand => set symbol value
+                    // Not fully implemented; add a simple placeholder
+                    emit(op, null, (char)0, null);
+                } else {
+                    emit(op, null, (char)0, null);
                 }
+            }
+        } else {
+            // If not in OpTable (e.g., stray label-only lines), attempt basic handling
+            // If line is a literal by itself like "='5'" (some samples show literals printed on program)
+            if(tok.first(m) == '='){
+                literal(tok.text(m));
+                // we do not increment LC here (these literal-only lines are not instructions)
+            }
+        }
+    }
+
+    // ---- Parallel pass 1 ----
+    // The source is cut into chunks of `chunkLines` lines that are tokenized and classified
+    // concurrently. Inside a chunk, every run of plain statements (IS, DC, DS, EQU, literal lines)
+    // becomes a Segment with its own symbol/literal tables in first-appearance order, label
+    // addresses relative to the segment start and IC records that refer to local ids. Statements
+    // that move LC or place literals (START, ORIGIN, LTORG, END) end a segment and are left to
+    // processLine. The merge then walks segments in source order: local tables are appended to
+    // the global ones (so indices are those of a serial run), LC is a running prefix sum of the
+    // segment lengths, and boundary statements are processed serially against the merged state.
+    // Finally the IC text of all segments is rendered in parallel with the global indices.
+
+    int chunkLines = 8192;
+
+    static class Segment {
+        final int from; // first line of the segment
+        int to; // end of the plain lines; lines[to] is the boundary statement if to < chunk end
+        boolean boundary;
+
+        final SymbolTable syms = new SymbolTable(); // local id + 1; line = line of first use
+        final List<String> lits = new ArrayList<>();
+        final Map<String,Integer> litIds = new HashMap<>();
+
+        IntTable defSym = new IntTable(), defRel = new IntTable(); // label definitions
+        int defs;
+        int lc; // LC advance over the segment
+        int line; // 1-based line being classified
+
+        // IC records: head "(IS,01)(1)", then optional (kind,local id) or (C,constant)
+        final List<String> head = new ArrayList<>();
+        final List<String> konst = new ArrayList<>();
+        IntTable kind = new IntTable(), ref = new IntTable();
+
+        int[] gsym; // local -> global symbol index, set by the merge
+        Literal[] glit;
+        int icAt; // position of the first record in IC
+
+        Segment(int from){ this.from = from; }
+
+        // local id of token i, entered on first use
+        int sym(Tokenizer tok, int i){
+            int id = tok.symbol(syms, i);
+            if(id == 0){
+                id = syms.add(tok.text(i));
+                syms.setLine(id, line);
+            }
+            return id-1;
+        }
+
+        int lit(String l){
+            Integer id = litIds.get(l);
+            if(id == null){ id = lits.size(); lits.add(l); litIds.put(l, id); }
+            return id;
+        }
+
+        void record(String h, char k, int r, String c){
+            kind.put(head.size(), k);
+            ref.put(head.size(), r);
+            head.add(h);
+            konst.add(c);
+        }
+
+        String text(int i){
+            char k = (char)kind.get(i);
+            if(k == 0) return head.get(i);
+            String op = k=='S' ? String.valueOf(gsym[ref.get(i)]) : k=='L' ? String.valueOf(glit[ref.get(i)].index) : konst.get(i);
+            return head.get(i) + "(" + k + "," + op + ")";
+        }
+    }
+
+    // Classifies lines [from,to) into segments; mirrors processLine for the plain statements
+    // stats, when not null, gets the lines, tokenize and lookup probes of the chunk
+    static List<Segment> scanChunk(List<String> lines, int from, int to, Stats stats){
+        List<Segment> out = new ArrayList<>();
+        Tokenizer tok = new Tokenizer();
+        Segment seg = new Segment(from);
+        for(int n=from;n<to;n++){
+            String line = lines.get(n).trim();
+            if(line.isEmpty()) continue;
+            seg.line = n+1;
+            long t0 = stats != null ? System.nanoTime() : 0;
+            tok.scan(line);
+            long t1 = stats != null ? System.nanoTime() : 0;
+            int m = 0;
+            boolean label = false;
+            int op = tok.op(0);
+            if(tok.count>=2 && op<0){
+                label = true;
+                m = 1;
+                op = tok.op(1);
+            }
+            long t2 = stats != null ? System.nanoTime() : 0;
+            int o1 = m+1, o2 = m+2;
+
+            String ds = op == OpTable.DS ? (tok.empty(o1) ? "1" : tok.text(o1)) : null;
+            String dc = op == OpTable.DC ? stripQuotes(tok.text(o1)) : null;
+            String reg = op >= 0 && OpTable.cls[op] == OpTable.IS && tok.isDigits(o1) ? tok.text(o1) : null;
+            String cond = op == OpTable.BC && !tok.empty(o2) ? tok.text(o1) : null;
+            if(op == OpTable.START || op == OpTable.ORIGIN || op == OpTable.LTORG || op == OpTable.END
+                    || (ds != null && (!isDigits(ds) || ds.length() > 9))
+                    || (dc != null && Diagnostics.parseInt(dc) == Diagnostics.NAN)
+                    || (cond != null && bcCondition(cond) == null)
+                    || (reg != null && Diagnostics.parseInt(reg) == Diagnostics.NAN)){
+                // left to processLine (malformed DS, DC, BC and registers too, so they are reported exactly as in a serial run)
+                seg.to = n;
+                seg.boundary = true;
+                out.add(seg);
+                seg = new Segment(n+1);
+                continue;
+            }
+            if(stats != null){ // boundary lines are counted by processLine
+                stats.add(ST_TOKENIZE, 1, t1 - t0);
+                stats.add(ST_LOOKUP, 1, t2 - t1);
+                stats.inc(ST_LINES);
+            }
+
+            if(label && !tok.empty(0)){ // as in statement(), an empty leading token is no label
+                seg.defSym.put(seg.defs, seg.sym(tok, 0));
+                seg.defRel.put(seg.defs++, seg.lc);
+            }
+
+            if(op < 0){
+                if(tok.first(m) == '=') seg.lit(tok.text(m));
+            } else if(OpTable.cls[op] == OpTable.IS){
+                String regField = "0";
+                if(tok.isSingleLetter(o1)) regField = String.valueOf((Character.toUpperCase(tok.first(o1)) - 'A') + 1);
+                else if(reg != null) regField = reg;
+                if(cond != null) regField = bcCondition(cond);
+                int opnd = tok.empty(o2) ? -1 : o2;
+                if(opnd < 0 && !tok.empty(o1) && (tok.first(o1) == '=' || !tok.isSingleLetter(o1))) opnd = o1;
+                String head = OpTable.head[op];
+                if(opnd >= 0 && tok.first(opnd) == '=') seg.record(head + "(" + regField + ")", 'L', seg.lit(tok.text(opnd)), null);
+                else if(opnd >= 0) seg.record(head + "(" + regField + ")", 'S', seg.sym(tok, opnd), null);
+                else seg.record(head, (char)0, 0, null);
+                seg.lc++;
+            } else if(op == OpTable.DC){
+                seg.record(OpTable.head[op], 'C', 0, String.valueOf(Diagnostics.parseInt(dc)));
+                seg.lc++;
+            } else if(ds != null){
+                int size = Integer.parseInt(ds);
+                seg.record(OpTable.head[op], 'C', 0, String.valueOf(size));
+                seg.lc += size;
             } else {
-                // If not in opTab (e.g., stray label-only lines), attempt basic handling
-                // If line is a literal by itself like "='5'" (some samples show literals printed on program)
-                if(mnemonic.startsWith("=")){
-                    String lit = mnemonic;
-                    if(!litMap.containsKey(lit)){
-                        Literal L = new Literal(lit, ++litCounter);
-                        litMap.put(lit,L);
-                        litList.add(L);
-                    }
-                    Literal L = litMap.get(lit);
-                    currentPoolLiterals.add(L);
-                    // we do not increment LC here (these literal-only lines are not instructions)
+                seg.record(OpTable.head[op], (char)0, 0, null); // EQU
+            }
+        }
+        seg.to = to;
+        out.add(seg);
+        return out;
+    }
+
+    // Same tables, IC and LC as processing every line with processLine and calling finish().
+    // Streaming/binary IC and the undo log need the serial order, so those runs stay serial.
+    void runParallel(List<String> lines, int threads) throws Exception {
+        if(icOut != null || binOut != null || codeOut != null || image != null || undo != null){
+            for(String line : lines) processLine(line);
+            finish();
+            return;
+        }
+        int first = 0;
+        while(first < lines.size() && firstLine) processLine(lines.get(first++)); // START handling
+
+        int start = first;
+        int chunks = (lines.size() - start + chunkLines - 1) / chunkLines;
+        List<List<Segment>> parts = new ArrayList<>(Collections.nCopies(chunks, null));
+        Stats[] chunkStats = new Stats[chunks]; // Stats is not thread-safe, so one per chunk
+        ForkJoinPool fj = new ForkJoinPool(Math.max(1, threads));
+        try{
+            fj.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+                int from = start + c*chunkLines;
+                if(stats != null) chunkStats[c] = newStats();
+                parts.set(c, scanChunk(lines, from, Math.min(lines.size(), from + chunkLines), chunkStats[c]));
+            })).get();
+            if(stats != null) for(Stats cs : chunkStats) stats.add(cs);
+
+            List<Segment> segs = new ArrayList<>();
+            for(List<Segment> p : parts) segs.addAll(p);
+            for(Segment s : segs){
+                merge(s, lines);
+                if(s.boundary){
+                    lineNo = s.to;
+                    processLine(lines.get(s.to));
                 }
             }
-        } // end while
+            lineNo = lines.size();
 
-        br.close();
+            fj.submit(() -> segs.parallelStream().forEach(s -> {
+                for(int i=0;i<s.head.size();i++) IC.set(s.icAt + i, s.text(i));
+            })).get();
+        } finally {
+            fj.shutdown();
+        }
+        finish();
+    }
 
-        // Assign addresses to any remaining literals not assigned
-        for(Literal L: litList){
-            if(L.addr == -1){
-                L.addr = LC;
-                LC++;
+    // Appends a segment's local tables to the global ones and places its labels at LC + relative LC
+    void merge(Segment s, List<String> lines){
+        if(echo != null){
+            for(int n=s.from;n<s.to;n++){
+                String line = lines.get(n).trim();
+                if(!line.isEmpty()) echo.println(line);
+            }
+        }
+        s.gsym = new int[s.syms.size()];
+        for(int i=0;i<s.gsym.length;i++){
+            String name = s.syms.name(i+1);
+            int S = symbols.find(name);
+            if(S == 0){
+                S = symbols.add(name);
+                symbols.setLine(S, s.syms.line(i+1));
+                if(stats != null) stats.inc(ST_SYM_INSERT);
             }
+            s.gsym[i] = S;
         }
+        s.glit = new Literal[s.lits.size()];
+        for(int i=0;i<s.glit.length;i++){
+            s.glit[i] = literal(s.lits.get(i));
+        }
+        for(int i=0;i<s.defs;i++) symbols.setAddr(s.gsym[s.defSym.get(i)], LC + s.defRel.get(i));
+        LC += s.lc;
+        s.icAt = IC.size();
+        IC.addAll(Collections.nCopies(s.head.size(), (String)null));
+    }
 
-        // Write IC to IC.txt
-        try(PrintWriter pw = new PrintWriter(new FileWriter("IC.txt"))){
-            for(String s: IC) pw.println(s);
+    // The literal of the open pool with this text, entered on first use
+    Literal literal(String lit){
+        Literal L = litMap.get(lit);
+        if(L == null){
+            L = new Literal(lit, ++litCounter);
+            litMap.put(lit, L);
+            litList.add(L);
+            if(stats != null) stats.inc(ST_LIT_INSERT);
+        }
+        return L;
+    }
+
+    // LTORG/END: the literals of the open pool get the next addresses, in order of first use,
+    // and a new pool begins. Only the pool's own literals are visited, and its map is dropped.
+    void placePool(){
+        if(poolStart == litList.size()) return;
+        long t0 = stats != null ? System.nanoTime() : 0;
+        poolTable.add(poolStart+1);
+        for(int i=poolStart;i<litList.size();i++){
+            Literal L = litList.get(i);
+            logUndo(-L.index, L.addr);
+            L.addr = LC++;
+            if(codeOut != null) codeOut.resolveLiteral(L.index, L.addr);
+        }
+        if(stats != null){
+            stats.add(ST_POOL_LITERALS, litList.size() - poolStart);
+            stats.time(ST_POOLS, t0);
+        }
+        poolStart = litList.size();
+        litMap = new HashMap<>();
+    }
+
+    // Called once after the last line (END or end of input)
+    void finish() throws IOException {
+        // Place the last pool when the source has no END
+        placePool();
+
+        if(binOut != null) binOut.close();
+        if(icOut != null) icOut.close();
+
+        // symbols that were used but never got an address are written as 0
+        for(int i=1;i<=symbols.size();i++){
+            if(symbols.addr(i) == -1) diag.error(file, symbols.line(i), "A105", "symbol '" + symbols.name(i) + "' is used but never defined");
+        }
+    }
+
+    void writeTables() throws IOException {
+        writeTables("");
+    }
+
+    // prefix is prepended to every file name, e.g. "out/prog." -> out/prog.SYMTAB.txt
+    void writeTables(String prefix) throws IOException {
+        long t0 = stats != null ? System.nanoTime() : 0;
+        // Write IC to IC.txt (already written line by line when streaming, none in one-pass mode)
+        if(icOut == null && codeOut == null){
+            try(PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(prefix + "IC.txt"), 1<<16))){
+                for(String s: IC) pw.println(s);
+            }
         }
 
         // Write SYMTAB
-        try(PrintWriter pw = new PrintWriter(new FileWriter("SYMTAB.txt"))){
-            int idx=1;
-            for(Symbol s: symList){
-                pw.println(idx + " " + s.name + " " + (s.addr==-1?0:s.addr) + " " + s.length);
-                idx++;
+        try(PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(prefix + "SYMTAB.txt"), 1<<16))){
+            for(int i=1;i<=symbols.size();i++){
+                pw.println(i + " " + symbols.name(i) + " " + (symbols.addr(i)==-1?0:symbols.addr(i)) + " " + symbols.length(i));
             }
         }
 
         // Write LITTAB
-        try(PrintWriter pw = new PrintWriter(new FileWriter("LITTAB.txt"))){
+        try(PrintWriter pw = new PrintWriter(new FileWriter(prefix + "LITTAB.txt"))){
             for(Literal L : litList){
                 pw.println(L.index + " " + L.lit + " " + (L.addr==-1?0:L.addr));
             }
         }
 
-        // Write POOLTAB: print indices of literal list where a new pool starts (we kept a simple model)
-        try(PrintWriter pw = new PrintWriter(new FileWriter("POOLTAB.txt"))){
-            // naive: one pool starting at 1
-            if(!litList.isEmpty()) pw.println(1);
+        // Write POOLTAB: index of the first literal of every pool
+        try(PrintWriter pw = new PrintWriter(new FileWriter(prefix + "POOLTAB.txt"))){
+            for(int first : poolTable) pw.println(first);
         }
+        if(stats != null) stats.time(ST_WRITE, t0);
+    }
 
+    void printTables(PrintStream out){
         // Print tables in sample format
-        System.out.println("___________________________________________________");
-        System.out.println("\n\nSYMBOL TABLE");
-        System.out.println("--------------------------");
-        System.out.println("SYMBOL ADDRESS LENGTH");
-        System.out.println("--------------------------");
-        for(Symbol s: symList){
-            System.out.println(s.name + " " + (s.addr==-1?0:s.addr) + " " + s.length);
-        }
-        System.out.println("--------------------------");
-
-        System.out.println("\n\nOPCODE TABLE");
-        System.out.println("----------------------------");
-        System.out.println("MNEMONIC\tCLASS\tINFO");
-        System.out.println("----------------------------");
-        for(Map.Entry<String, String[]> e : opTab.entrySet()){
-            System.out.println(e.getKey() + "\t" + e.getValue()[0] + "\t" + e.getValue()[1]);
-        }
-        System.out.println("----------------------------");
-
-        System.out.println("\n\nLITERAL TABLE");
-        System.out.println("-----------------");
-        System.out.println("LITERAL ADDRESS");
-        System.out.println("-----------------");
+        out.println("___________________________________________________");
+        out.println("\n\nSYMBOL TABLE");
+        out.println("--------------------------");
+        out.println("SYMBOL ADDRESS LENGTH");
+        out.println("--------------------------");
+        for(int i=1;i<=symbols.size();i++){
+            out.println(symbols.name(i) + " " + (symbols.addr(i)==-1?0:symbols.addr(i)) + " " + symbols.length(i));
+        }
+        out.println("--------------------------");
+
+        out.println("\n\nOPCODE TABLE");
+        out.println("----------------------------");
+        out.println("MNEMONIC\tCLASS\tINFO");
+        out.println("----------------------------");
+        for(int op : OpTable.printOrder()){
+            out.println(OpTable.name[op] + "\t" + BinaryIC.className(OpTable.cls[op]) + "\t" + OpTable.code[op]);
+        }
+        out.println("----------------------------");
+
+        out.println("\n\nLITERAL TABLE");
+        out.println("-----------------");
+        out.println("LITERAL ADDRESS");
+        out.println("-----------------");
         for(Literal L: litList){
-            System.out.println(L.lit + " " + (L.addr==-1?0:L.addr));
-        }
-        System.out.println("------------------");
-
-        System.out.println("\n\nPOOL TABLE");
-        System.out.println("-----------------");
-        System.out.println("LITERAL NUMBER");
-        System.out.println("-----------------");
-        if(!litList.isEmpty()) System.out.println(1);
-        System.out.println("------------------");
-        System.out.println("\nIntermediate code written to IC.txt");
-        System.out.println("SYMTAB.txt, LITTAB.txt, POOLTAB.txt generated.");
+            out.println(L.lit + " " + (L.addr==-1?0:L.addr));
+        }
+        out.println("------------------");
+
+        out.println("\n\nPOOL TABLE");
+        out.println("-----------------");
+        out.println("LITERAL NUMBER");
+        out.println("-----------------");
+        for(int first : poolTable) out.println(first);
+        out.println("------------------");
+        out.println("\nIntermediate code written to IC.txt");
+        out.println("SYMTAB.txt, LITTAB.txt, POOLTAB.txt generated.");
     }
 }
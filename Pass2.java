@@ -1,14 +1,26 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 /*
   Pass2.java
   Usage:
     javac Pass2.java
     java Pass2 IC.txt
+    java Pass2 --echo IC.txt       (also prints the machine code, as older versions always did)
+    java Pass2 --stats IC.txt      (counters and timers on stderr and as JFR events, see Stats.java)
+    java Pass2 IC.bin   (binary IC written by 'java Pass1 --binary', detected automatically)
+    java Pass2 --parallel IC.txt   (chunks of IC translated on all cores, same MACHINECODE.txt)
+    java Pass2 --mmap IC.txt       (text IC memory-mapped and decoded as bytes, see MappedText.java)
+    java Pass2 --fail-fast IC.txt  (stop at the first error instead of reporting all, see Diagnostics.java)
 
   Reads:
-    IC.txt      -> intermediate code produced by Pass1
+    IC.txt      -> intermediate code produced by Pass1 (text or binary)
     SYMTAB.txt  -> symbol table (index SYMBOL ADDRESS LENGTH)
     LITTAB.txt  -> literal table (index LITERAL ADDRESS)
 
@@ -17,146 +29,466 @@ import java.util.*;
 */
 
 public class Pass2 {
-    static Map<Integer, Integer> symAddr = new HashMap<>(); // index -> address
-    static Map<Integer, Integer> litAddr = new HashMap<>(); // index -> address
+    IntTable symAddr = new IntTable(); // index -> address
+    IntTable litAddr = new IntTable(); // index -> address
+    List<String> machine = new ArrayList<>(); // machine code lines, in IC order
+    MachineCodeWriter out; // when set, machine code is encoded straight into it instead of machine
+    Stats stats; // --stats; null when off
+    ObjectFile.Image image; // when set, every word is also packed into the object image (see ObjectFile)
+    Diagnostics diag = new Diagnostics(false);
+    String file = "IC.txt"; // IC name in diagnostics
+    int record; // 1-based number of the IC record being translated
+
+    // Stats indices
+    static final int ST_PASS = 0, ST_RECORDS = 1, ST_SYM_RESOLVE = 2, ST_LIT_RESOLVE = 3, ST_WORDS = 4, ST_OUTPUT = 5;
+
+    static Stats newStats(){
+        return new Stats("pass2", "pass 2", "IC parse+translate", "symbol resolves", "literal resolves",
+                "words", "output bytes");
+    }
+
+    static final int CHUNK = 16384; // IC records per parallel task
 
     public static void main(String[] args) throws Exception {
+        boolean parallel = false, mmap = false, echo = false, stats = false, failFast = false;
+        int a = 0;
+        for(; a<args.length && args[a].startsWith("--"); a++){
+            if(args[a].equals("--parallel")) parallel = true;
+            else if(args[a].equals("--mmap")) mmap = true;
+            else if(args[a].equals("--echo")) echo = true;
+            else if(args[a].equals("--stats")) stats = true;
+            else if(args[a].equals("--fail-fast")) failFast = true;
+        }
+        args = Arrays.copyOfRange(args, a, args.length);
         if(args.length==0){
-            System.out.println("Usage: java Pass2 <IC_file>");
+            System.out.println("Usage: java Pass2 [--parallel] [--mmap] [--echo] [--stats] [--fail-fast] <IC_file>");
             return;
         }
-        // Load SYMTAB
-        try(BufferedReader br = new BufferedReader(new FileReader("SYMTAB.txt"))){
-            String line;
-            while((line = br.readLine()) != null){
-                line = line.trim();
-                if(line.isEmpty()) continue;
-                String[] p = line.split("\\s+");
-                // format: index SYMBOL ADDRESS LENGTH
-                int idx = Integer.parseInt(p[0]);
-                int addr = Integer.parseInt(p[2]);
-                symAddr.put(idx, addr);
+        Pass2 p = new Pass2();
+        p.diag = new Diagnostics(failFast);
+        p.file = args[0];
+        if(stats){
+            p.stats = newStats();
+            p.stats.begin(ST_PASS);
+        }
+        try{
+            p.loadTables("SYMTAB.txt", "LITTAB.txt");
+
+            if(parallel){
+                p.generateParallel(args[0], "MACHINECODE.txt", echo ? System.out : null, Runtime.getRuntime().availableProcessors());
+            } else {
+                // Read intermediate code, machine code goes straight to MACHINECODE.txt (and the console with --echo)
+                try(MachineCodeWriter w = new MachineCodeWriter("MACHINECODE.txt", echo ? System.out : null)){
+                    p.out = w;
+                    if(BinaryIC.isBinary(args[0])) p.readBinary(args[0]);
+                    else if(mmap) p.readMapped(args[0]);
+                    else p.readText(args[0]);
+                    w.flush();
+                    if(stats) p.stats.add(ST_OUTPUT, w.bytes, w.flushNanos);
+                }
+            }
+            if(stats){
+                p.stats.end(ST_PASS);
+                p.stats.report(System.err);
+                p.stats.commit();
             }
         } catch(Exception e){
-            System.out.println("Warning: could not read SYMTAB.txt: " + e.getMessage());
+            if(Diagnostics.failure(e) == null) throw e;
+            p.diag.print(System.err); // fail-fast
+            System.exit(1);
+        }
+        System.out.println("\nMachine code written to MACHINECODE.txt");
+        p.diag.print(System.err);
+        if(p.diag.errors() > 0) System.exit(1);
+    }
+
+    // echo, when not null, also gets every line (console output of the CLI)
+    void writeMachineCode(String file, PrintStream echo) throws IOException {
+        try(MachineCodeWriter w = new MachineCodeWriter(file, echo)){
+            for(String s: machine) w.line(s);
         }
+    }
 
-        // Load LITTAB
-        try(BufferedReader br = new BufferedReader(new FileReader("LITTAB.txt"))){
+    void loadTables(String symFile, String litFile){
+        loadTable(symFile, symAddr, "index SYMBOL ADDRESS LENGTH");
+        loadTable(litFile, litAddr, "index LITERAL ADDRESS");
+    }
+
+    // index -> address from the first and third column; a malformed line is reported and skipped.
+    // Pass1 numbers the entries 1..n, so an index beyond the line count is malformed too (the
+    // IntTable would otherwise be sized to it).
+    void loadTable(String tableFile, IntTable into, String format){
+        List<String> lines = new ArrayList<>();
+        try(BufferedReader br = new BufferedReader(new FileReader(tableFile))){
             String line;
-            while((line = br.readLine()) != null){
-                line = line.trim();
-                if(line.isEmpty()) continue;
-                String[] p = line.split("\\s+");
-                // format: index LITERAL ADDRESS
-                int idx = Integer.parseInt(p[0]);
-                int addr = Integer.parseInt(p[2]);
-                litAddr.put(idx, addr);
+            while((line = br.readLine()) != null) lines.add(line);
+        } catch(IOException e){
+            diag.error(tableFile, 0, "A202", "cannot read table: " + e.getMessage());
+            return;
+        }
+        for(int n=1;n<=lines.size();n++){
+            String line = lines.get(n-1).trim();
+            if(line.isEmpty()) continue;
+            String[] p = line.split("\\s+");
+            int idx = p.length >= 3 ? Diagnostics.parseInt(p[0]) : Diagnostics.NAN;
+            int addr = p.length >= 3 ? Diagnostics.parseInt(p[2]) : Diagnostics.NAN;
+            if(idx < 0 || addr == Diagnostics.NAN){
+                diag.error(tableFile, n, "A201", "expected '" + format + "', got '" + line + "'");
+                continue;
             }
-        } catch(Exception e){
-            System.out.println("Warning: could not read LITTAB.txt: " + e.getMessage());
+            if(idx > lines.size()){
+                diag.error(tableFile, n, "A201", "index " + idx + " is beyond the " + lines.size() + " lines of the table, line skipped");
+                continue;
+            }
+            into.put(idx, addr);
         }
+    }
+
+    // Takes the addresses straight from an in-memory Pass1, same values as its SYMTAB/LITTAB files
+    void useTables(Pass1 p1){
+        SymbolTable st = p1.symbols;
+        symAddr = new IntTable(st.size()+1);
+        litAddr = new IntTable(p1.litList.size()+1);
+        for(int i=1;i<=st.size();i++) symAddr.put(i, st.addr(i)==-1?0:st.addr(i));
+        for(Pass1.Literal L : p1.litList) litAddr.put(L.index, L.addr==-1?0:L.addr);
+    }
 
-        // Read intermediate code
-        List<String> machine = new ArrayList<>();
-        try(BufferedReader br = new BufferedReader(new FileReader(args[0]))){
+    void readText(String file) throws IOException {
+        try(BufferedReader br = new BufferedReader(new FileReader(file))){
             String ic;
             while((ic = br.readLine()) != null){
-                ic = ic.trim();
-                if(ic.isEmpty()) continue;
-
-                // Examples of IC lines:
-                // (AD,01)(C,200)
-                // (IS,04)(1)(L,1)
-                // (DL,01)(C,5)
-                // (IS,00)
-                // We'll parse tokens like (XX,YY) and (S,n) or (L,n) or (C,n) or register numbers
-
-                List<String> fields = new ArrayList<>();
-                int i=0;
-                while(i<ic.length()){
-                    if(ic.charAt(i)=='('){
-                        int j = ic.indexOf(')', i);
-                        if(j==-1) break;
-                        fields.add(ic.substring(i+1,j));
-                        i = j+1;
-                    } else i++;
+                if(stats != null){
+                    long t0 = System.nanoTime();
+                    translate(ic);
+                    stats.time(ST_RECORDS, t0);
+                } else {
+                    translate(ic);
                 }
+            }
+        }
+    }
 
-                if(fields.size()==0) continue;
-                String head = fields.get(0); // like "AD,01" or "IS,04" or "DL,01"
-                String[] headParts = head.split(",");
-                String cls = headParts[0];
-                String code = headParts.length>1 ? headParts[1] : "00";
-
-                if(cls.equals("AD")){
-                    // No Machine code usually
-                    // except some pseudo directives handled earlier
-                    // For readability produce + 00 0 000 line if needed - we'll skip
-                } else if(cls.equals("DL")){
-                    // (DL,01)(C,5) => DC produce data constant
-                    String constVal = "0";
-                    for(int k=1;k<fields.size();k++){
-                        if(fields.get(k).startsWith("C,")){
-                            constVal = fields.get(k).split(",")[1];
-                        }
-                    }
-                    String mc = "+ 00 0 " + String.format("%03d", Integer.parseInt(constVal));
-                    machine.add(mc);
-                } else if(cls.equals("IS")){
-                    // fields may be: (IS,04) (reg) (L,1)  OR (IS,04) (reg) (S,1)
-                    String opcode = code;
-                    String reg = "0";
-                    String addrStr = "000";
-
-                    if(fields.size()>=2){
-                        String f1 = fields.get(1);
-                        // sometimes register is encoded as number alone (like "1")
-                        if(f1.matches("\\d+")){
-                            reg = f1;
-                        } else if(f1.startsWith("R") && f1.length()>1 && Character.isDigit(f1.charAt(1))){
-                            reg = f1.substring(1);
-                        } else {
-                            // if f1 is something like "1" still accept
-                            if(f1.matches("\\d+")) reg = f1;
-                        }
-                    }
+    void readMapped(String file) throws IOException {
+        try(MappedText t = new MappedText(file)){
+            while(t.next()){
+                long t0 = stats != null ? System.nanoTime() : 0;
+                if(!t.ascii) translate(t.string());
+                else if(!translate(t)){
+                    record--; // counted again by translate(String)
+                    translate(t.string());
+                }
+                if(stats != null) stats.time(ST_RECORDS, t0);
+            }
+        }
+    }
 
-                    // look for S,n or L,n or C,n
-                    for(int k=1;k<fields.size();k++){
-                        String f = fields.get(k);
-                        if(f.startsWith("S,")){
-                            int idx = Integer.parseInt(f.split(",")[1]);
-                            int addr = symAddr.getOrDefault(idx, 0);
-                            addrStr = String.format("%03d", addr);
-                        } else if(f.startsWith("L,")){
-                            int idx = Integer.parseInt(f.split(",")[1]);
-                            int addr = litAddr.getOrDefault(idx, 0);
-                            addrStr = String.format("%03d", addr);
-                        } else if(f.startsWith("C,")){
-                            int c = Integer.parseInt(f.split(",")[1]);
-                            addrStr = String.format("%03d", c);
-                        } else if(f.matches("\\d+")) {
-                            // reg
-                            reg = f;
-                        }
-                    }
+    static final String[] DIGIT = {"0","1","2","3","4","5","6","7","8","9"};
+    int[] fs = new int[8], fe = new int[8]; // field bounds of the current mapped line
+
+    // Byte-level translate(String) for the usual IC shapes: a (XX,nn) head followed by (n) and
+    // (S|L|C,n) fields. Returns false without touching machine for anything else, which the
+    // caller then hands to translate(String), so both paths always give the same output.
+    boolean translate(MappedText t){
+        record++;
+        int n = 0;
+        for(int i=t.start;i<t.end;i++){
+            if(t.at(i) != '(') continue;
+            int j = i+1;
+            while(j<t.end && t.at(j)!=')') j++;
+            if(j==t.end || n==fs.length) return false;
+            fs[n] = i+1;
+            fe[n++] = j;
+            i = j;
+        }
+        if(n == 0) return true;
+        int h = fs[0];
+        if(fe[0]-h != 5 || t.at(h+2)!=',' || digits(t, h+3, h+5) < 0) return false;
+        byte c0 = t.at(h), c1 = t.at(h+1);
+        boolean is = c0=='I' && c1=='S', dl = c0=='D' && c1=='L';
+        if(!is && !dl) return c0>='A' && c0<='Z' && c1>='A' && c1<='Z'; // AD and unknown classes: no code
+
+        String reg = "0";
+        int addr = 0;
+        for(int k=1;k<n;k++){
+            int s = fs[k], e = fe[k];
+            int v = digits(t, s, e);
+            if(v >= 0){
+                if(dl) continue;
+                reg = e-s==1 ? DIGIT[v] : t.text(s, e);
+                continue;
+            }
+            byte kind = e-s>2 ? t.at(s) : 0;
+            if((kind!='S' && kind!='L' && kind!='C') || t.at(s+1)!=',' || (v = digits(t, s+2, e)) < 0) return false;
+            if(dl){
+                if(kind=='C') addr = v;
+            } else {
+                addr = kind=='S' ? symbol(v) : kind=='L' ? literal(v) : v;
+            }
+        }
+        if(dl) word(0, "0", addr);
+        else word(digits(t, h+3, h+5), reg, addr);
+        return true;
+    }
+
+    int symbol(int index){
+        if(stats != null) stats.inc(ST_SYM_RESOLVE);
+        if(index < 1 || index >= symAddr.size()) diag.error(file, record, "A204", "symbol index " + index + " is not in the symbol table, address 0 used");
+        return symAddr.get(index);
+    }
+
+    int literal(int index){
+        if(stats != null) stats.inc(ST_LIT_RESOLVE);
+        if(index < 1 || index >= litAddr.size()) diag.error(file, record, "A205", "literal index " + index + " is not in the literal table, address 0 used");
+        return litAddr.get(index);
+    }
+
+    // numeric IC field; NAN (and an A203 error) when it is not a number
+    int field(String text, String what){
+        int v = Diagnostics.parseInt(text);
+        if(v == Diagnostics.NAN) diag.error(file, record, "A203", what + " '" + text + "' in IC record is not a number");
+        return v;
+    }
+
+    // one machine code line: to out when streaming, else onto machine
+    void word(int opcode, CharSequence reg, int addr){
+        if(stats != null) stats.inc(ST_WORDS);
+        if(image != null) image.word(opcode, reg, addr);
+        try{
+            if(out != null) out.word(opcode, reg, addr);
+            else machine.add(MachineCodeWriter.text(opcode, reg, addr));
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void word(int opcode, int reg, int addr){
+        if(out == null){ // counted by the CharSequence overload
+            word(opcode, reg>=0 && reg<=9 ? DIGIT[reg] : String.valueOf(reg), addr);
+            return;
+        }
+        if(stats != null) stats.inc(ST_WORDS);
+        if(image != null) image.word(opcode, reg, addr);
+        try{
+            out.word(opcode, reg, addr);
+        } catch(IOException e){
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // value of the ASCII digits in [s,e), or -1 unless 1..9 digits
+    static int digits(MappedText t, int s, int e){
+        if(e<=s || e-s>9) return -1;
+        int v = 0;
+        for(int i=s;i<e;i++){
+            byte b = t.at(i);
+            if(b<'0' || b>'9') return -1;
+            v = v*10 + (b-'0');
+        }
+        return v;
+    }
+
+    // Translates one text IC line, appending its machine code (if any) to machine
+    void translate(String ic){
+        record++;
+        ic = ic.trim();
+        if(ic.isEmpty()) return;
+
+        // Examples of IC lines:
+        // (AD,01)(C,200)
+        // (IS,04)(1)(L,1)
+        // (DL,01)(C,5)
+        // (IS,00)
+        // We'll parse tokens like (XX,YY) and (S,n) or (L,n) or (C,n) or register numbers
+
+        List<String> fields = new ArrayList<>();
+        int i=0;
+        while(i<ic.length()){
+            if(ic.charAt(i)=='('){
+                int j = ic.indexOf(')', i);
+                if(j==-1) break;
+                fields.add(ic.substring(i+1,j));
+                i = j+1;
+            } else i++;
+        }
 
-                    String mc = "+ " + String.format("%02d", Integer.parseInt(opcode)) + " " + reg + " " + addrStr;
-                    machine.add(mc);
+        if(fields.size()==0) return;
+        String head = fields.get(0); // like "AD,01" or "IS,04" or "DL,01"
+        String[] headParts = head.split(",");
+        String cls = headParts[0];
+        String code = headParts.length>1 ? headParts[1] : "00";
+
+        if(cls.equals("AD")){
+            // No Machine code usually
+            // except some pseudo directives handled earlier
+            // For readability produce + 00 0 000 line if needed - we'll skip
+        } else if(cls.equals("DL")){
+            // (DL,01)(C,5) => DC produce data constant
+            String constVal = "0";
+            for(int k=1;k<fields.size();k++){
+                if(fields.get(k).startsWith("C,")){
+                    constVal = fields.get(k).substring(2);
+                }
+            }
+            int v = field(constVal, "constant");
+            word(0, "0", v == Diagnostics.NAN ? 0 : v);
+        } else if(cls.equals("IS")){
+            // fields may be: (IS,04) (reg) (L,1)  OR (IS,04) (reg) (S,1)
+            String opcode = code;
+            String reg = "0";
+            int addr = 0;
+
+            if(fields.size()>=2){
+                String f1 = fields.get(1);
+                // sometimes register is encoded as number alone (like "1")
+                if(f1.matches("\\d+")){
+                    reg = f1;
+                } else if(f1.startsWith("R") && f1.length()>1 && Character.isDigit(f1.charAt(1))){
+                    reg = f1.substring(1);
                 } else {
-                    // unknown class
+                    // if f1 is something like "1" still accept
+                    if(f1.matches("\\d+")) reg = f1;
+                }
+            }
+
+            // look for S,n or L,n or C,n
+            for(int k=1;k<fields.size();k++){
+                String f = fields.get(k);
+                if(f.startsWith("S,")){
+                    int idx = field(f.substring(2), "symbol index");
+                    if(idx != Diagnostics.NAN) addr = symbol(idx);
+                } else if(f.startsWith("L,")){
+                    int idx = field(f.substring(2), "literal index");
+                    if(idx != Diagnostics.NAN) addr = literal(idx);
+                } else if(f.startsWith("C,")){
+                    int v = field(f.substring(2), "constant");
+                    if(v != Diagnostics.NAN) addr = v;
+                } else if(f.matches("\\d+")) {
+                    // reg
+                    reg = f;
                 }
             }
+
+            int op = field(opcode, "opcode");
+            word(op == Diagnostics.NAN ? 0 : op, reg, addr);
+        } else {
+            // unknown class
         }
+    }
 
-        // write MACHINECODE.txt and print
-        try(PrintWriter pw = new PrintWriter(new FileWriter("MACHINECODE.txt"))){
-            for(String s: machine){
-                pw.println(s);
-                System.out.println(s);
+    void readBinary(String file) throws IOException {
+        try(BinaryIC.Reader r = new BinaryIC.Reader(file)){
+            while(r.next()){
+                long t0 = stats != null ? System.nanoTime() : 0;
+                record++;
+                translate(r);
+                if(stats != null) stats.time(ST_RECORDS, t0);
             }
         }
-        System.out.println("\nMachine code written to MACHINECODE.txt");
+    }
+
+    // Same machine code as the text path, decoded straight from the fixed-width record
+    void translate(BinaryIC.Reader r){
+        if(r.cls == BinaryIC.CLS_DL){
+            word(0, 0, r.kind=='C' ? r.operand : 0);
+        } else if(r.cls == BinaryIC.CLS_IS){
+            int addr = 0;
+            if(r.kind=='S') addr = symbol(r.operand);
+            else if(r.kind=='L') addr = literal(r.operand);
+            else if(r.kind=='C') addr = r.operand;
+            int reg = (r.flags & BinaryIC.F_REG) != 0 ? r.reg : 0;
+            if(r.extra > 0) word(r.opcode, BinaryIC.regText(reg, r.extra), addr); // "01" stays "01"
+            else word(r.opcode, reg, addr);
+        }
+    }
+
+    // A Pass2 with its own machine list over the same (read-only) tables, for one chunk
+    Pass2 worker(){
+        Pass2 w = new Pass2();
+        w.symAddr = symAddr;
+        w.litAddr = litAddr;
+        w.diag = diag;
+        w.file = file;
+        if(stats != null) w.stats = newStats(); // Stats is not thread-safe, so one per worker
+        return w;
+    }
+
+    // Parallel code generation. Every IC record depends only on the read-only tables, so the IC is
+    // cut into chunks of CHUNK records that are translated on a ForkJoin pool, each into its own
+    // byte block. A prefix sum over the block sizes gives every chunk its offset in the output,
+    // and the blocks are written with positional FileChannel writes. The file is byte-identical to
+    // writeMachineCode; echo, when not null, gets the same text in order.
+    void generateParallel(String icFile, String outFile, PrintStream echo, int threads) throws Exception {
+        boolean binary = BinaryIC.isBinary(icFile);
+        List<String> text = null;
+        int records;
+        if(binary){
+            try(BinaryIC.Reader r = new BinaryIC.Reader(icFile)){ records = r.count; }
+        } else {
+            text = Files.readAllLines(Paths.get(icFile), Charset.defaultCharset());
+            records = text.size();
+        }
+        int chunks = (records + CHUNK - 1) / CHUNK;
+        byte[][] blocks = new byte[chunks][];
+        Stats[] chunkStats = new Stats[chunks];
+        List<String> icLines = text;
+
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        try{
+            pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+                int from = c*CHUNK, to = Math.min(records, from+CHUNK);
+                Pass2 w = worker();
+                ByteArrayOutputStream block = new ByteArrayOutputStream(Math.max(32, (to-from)*12));
+                w.out = new MachineCodeWriter(block, null);
+                if(binary){
+                    try(BinaryIC.Reader r = new BinaryIC.Reader(icFile)){
+                        r.seek(from);
+                        for(int i=from;i<to && r.next();i++){
+                            w.record = i+1;
+                            long t0 = w.stats != null ? System.nanoTime() : 0;
+                            w.translate(r);
+                            if(w.stats != null) w.stats.time(ST_RECORDS, t0);
+                        }
+                    } catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                } else {
+                    w.record = from;
+                    for(int i=from;i<to;i++){
+                        long t0 = w.stats != null ? System.nanoTime() : 0;
+                        w.translate(icLines.get(i));
+                        if(w.stats != null) w.stats.time(ST_RECORDS, t0);
+                    }
+                }
+                try{
+                    w.out.close();
+                } catch(IOException e){
+                    throw new UncheckedIOException(e);
+                }
+                blocks[c] = block.toByteArray();
+                chunkStats[c] = w.stats;
+            })).get();
+            if(stats != null) for(Stats cs : chunkStats) stats.add(cs);
+
+            long[] offset = new long[chunks+1];
+            for(int c=0;c<chunks;c++) offset[c+1] = offset[c] + blocks[c].length;
+
+            long t0 = stats != null ? System.nanoTime() : 0;
+            try(FileChannel ch = FileChannel.open(Paths.get(outFile), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                pool.submit(() -> IntStream.range(0, chunks).parallel().forEach(c -> {
+                    ByteBuffer buf = ByteBuffer.wrap(blocks[c]);
+                    long pos = offset[c];
+                    try{
+                        while(buf.hasRemaining()) pos += ch.write(buf, pos);
+                    } catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                })).get();
+            }
+            if(stats != null) stats.add(ST_OUTPUT, offset[chunks], System.nanoTime() - t0);
+        } finally {
+            pool.shutdown();
+        }
+        if(echo != null) for(byte[] b : blocks) echo.write(b, 0, b.length);
     }
 }
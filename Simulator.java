@@ -0,0 +1,235 @@
+import java.io.*;
+
+/*
+  Simulator.java
+  Runs assembled programs: an interpreter for the imperative statements of OpTable
+  (STOP, ADD, SUB, MULT, MOVER, MOVEM, COMP, BC, DIV, READ, PRINT).
+
+  Usage:
+    javac *.java
+    java Simulator prog.obj            (object file from Assembler --object, see ObjectFile.java)
+    java Simulator asm_input.txt       (assembles in-process first)
+    java Simulator -n 1000000 prog.obj (stop after that many instructions)
+
+  READ takes whitespace-separated integers from standard input, PRINT writes one per line
+  to standard output; both go through 64KB buffers. The instruction count and
+  instructions per second are reported on stderr.
+
+  Machine: memory and registers are int arrays. Every word is decoded once into op/reg/addr
+  arrays (opcode<<25 | reg<<20 | addr, see ObjectFile.pack); stores re-decode the word they
+  overwrite, so a program may still patch its own code.
+    ADD/SUB/MULT/DIV/MOVER   reg = ...; the result is also the condition value
+    MOVEM                    mem[addr] = reg
+    COMP                     condition value = sign of (reg - mem[addr])
+    BC cc, addr              jump if cc holds for the condition value:
+                             1 LT, 2 LE, 3 EQ, 4 GT, 5 GE, 6 ANY, 0 NZ (not zero); Pass1 maps
+                             the names to these codes (OpTable.CONDITIONS)
+    READ/PRINT               mem[addr] from input / to output
+*/
+
+public class Simulator {
+    static final int STOP = 0, ADD = 1, SUB = 2, MULT = 3, MOVER = 4, MOVEM = 5, COMP = 6, BC = 7,
+            DIV = 8, READ = 9, PRINT = 10;
+
+    final int[] mem;
+    final byte[] op;   // decoded words
+    final byte[] reg;
+    final int[] addr;
+    final int[] R = new int[ObjectFile.REG_MASK+1]; // registers; 0 is the field of instructions without one
+    int pc;
+    int cond;
+    boolean halted;
+    long executed;
+
+    InputStream in = System.in;
+    final byte[] inBuf = new byte[1<<16];
+    int inPos, inLen;
+
+    OutputStream out = System.out;
+    final byte[] outBuf = new byte[1<<16];
+    int outLen;
+
+    // image: words at their addresses; memory is extended to cover every address operand
+    Simulator(int[] image, int entry){
+        int top = image.length;
+        for(int w : image) top = Math.max(top, (w & ObjectFile.ADDR_MASK) + 1);
+        mem = new int[top];
+        System.arraycopy(image, 0, mem, 0, image.length);
+        op = new byte[top];
+        reg = new byte[top];
+        addr = new int[top];
+        for(int a=0;a<top;a++) decode(a);
+        pc = entry;
+    }
+
+    static Simulator load(String objectFile) throws IOException {
+        try(ObjectFile.Reader r = new ObjectFile.Reader(objectFile)){
+            int[] image = new int[r.size()];
+            r.load(image);
+            return new Simulator(image, r.entry);
+        }
+    }
+
+    // null when the source has assembler errors (printed to stderr)
+    static Simulator assemble(String sourceFile) throws IOException {
+        Pass1 p1 = new Pass1();
+        p1.image = new ObjectFile.Image();
+        p1.file = sourceFile;
+        try(BufferedReader br = new BufferedReader(new FileReader(sourceFile), 1<<16)){
+            p1.run(br);
+        }
+        new Assembler().pass2(p1);
+        ObjectFile.check(p1, p1.image);
+        if(p1.diag.errors() > 0){
+            p1.diag.print(System.err);
+            return null;
+        }
+        return new Simulator(ObjectFile.memory(p1, p1.image, null), Math.max(p1.image.entry, 0));
+    }
+
+    void decode(int a){
+        int w = mem[a];
+        op[a] = (byte)ObjectFile.opcode(w);
+        reg[a] = (byte)ObjectFile.reg(w);
+        addr[a] = w & ObjectFile.ADDR_MASK;
+    }
+
+    void store(int a, int v){
+        mem[a] = v;
+        decode(a);
+    }
+
+    // Executes at most limit instructions; returns the number executed
+    long run(long limit) throws IOException {
+        final int[] mem = this.mem, addr = this.addr, R = this.R;
+        final byte[] op = this.op, reg = this.reg;
+        int pc = this.pc, cond = this.cond;
+        long n = 0;
+        try{
+            loop:
+            while(n < limit){
+                int a = addr[pc];
+                int r = reg[pc];
+                n++;
+                switch(op[pc]){
+                    case STOP:
+                        halted = true;
+                        break loop;
+                    case ADD:   cond = R[r] += mem[a]; pc++; break;
+                    case SUB:   cond = R[r] -= mem[a]; pc++; break;
+                    case MULT:  cond = R[r] *= mem[a]; pc++; break;
+                    case MOVER: cond = R[r] = mem[a]; pc++; break;
+                    case MOVEM: store(a, R[r]); pc++; break;
+                    case COMP:  cond = Integer.compare(R[r], mem[a]); pc++; break;
+                    case BC:    pc = taken(r, cond) ? a : pc+1; break;
+                    case DIV:
+                        if(mem[a] == 0) throw new IllegalStateException("division by zero at " + pc);
+                        cond = R[r] /= mem[a];
+                        pc++;
+                        break;
+                    case READ:  store(a, readInt()); pc++; break;
+                    case PRINT: print(mem[a]); pc++; break;
+                    default:
+                        throw new IllegalStateException("illegal opcode " + op[pc] + " at " + pc);
+                }
+            }
+        } catch(ArrayIndexOutOfBoundsException e){
+            throw new IllegalStateException("address out of range at " + pc + " (memory holds " + mem.length + " words)");
+        } finally {
+            this.pc = pc;
+            this.cond = cond;
+            executed += n;
+        }
+        return n;
+    }
+
+    static boolean taken(int cc, int c){
+        switch(cc){
+            case 0: return c != 0;
+            case 1: return c < 0;
+            case 2: return c <= 0;
+            case 3: return c == 0;
+            case 4: return c > 0;
+            case 5: return c >= 0;
+            case 6: return true;
+            default: return false;
+        }
+    }
+
+    // ---- buffered I/O ----
+
+    int readByte() throws IOException {
+        if(inPos == inLen){
+            inLen = in.read(inBuf, 0, inBuf.length);
+            inPos = 0;
+            if(inLen <= 0){
+                inLen = 0;
+                return -1;
+            }
+        }
+        return inBuf[inPos++];
+    }
+
+    int readInt() throws IOException {
+        int c = readByte();
+        while(c == ' ' || c == '\t' || c == '\r' || c == '\n') c = readByte();
+        if(c < 0) throw new IllegalStateException("READ at " + pc + ": no more input");
+        boolean neg = c == '-';
+        if(neg || c == '+') c = readByte();
+        if(c < '0' || c > '9') throw new IllegalStateException("READ at " + pc + ": input is not a number");
+        int v = 0;
+        for(; c >= '0' && c <= '9'; c = readByte()) v = v*10 + (c-'0');
+        return neg ? -v : v;
+    }
+
+    void print(int v) throws IOException {
+        if(outLen + 12 > outBuf.length) flush();
+        long x = v;
+        if(x < 0){
+            outBuf[outLen++] = '-';
+            x = -x;
+        }
+        int start = outLen;
+        do{
+            outBuf[outLen++] = (byte)('0' + x % 10);
+            x /= 10;
+        } while(x != 0);
+        for(int i=start, j=outLen-1; i<j; i++, j--){
+            byte t = outBuf[i]; outBuf[i] = outBuf[j]; outBuf[j] = t;
+        }
+        outBuf[outLen++] = '\n';
+    }
+
+    void flush() throws IOException {
+        out.write(outBuf, 0, outLen);
+        out.flush();
+        outLen = 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long limit = Long.MAX_VALUE;
+        int a = 0;
+        if(args.length > 1 && args[0].equals("-n")){
+            limit = Long.parseLong(args[1]);
+            a = 2;
+        }
+        if(a >= args.length){
+            System.out.println("Usage: java Simulator [-n max_instructions] <object_file|assembly_file>");
+            return;
+        }
+        Simulator sim = ObjectFile.isObject(args[a]) ? load(args[a]) : assemble(args[a]);
+        if(sim == null){
+            System.err.println(args[a] + " has assembler errors, not run");
+            System.exit(1);
+        }
+        long t0 = System.nanoTime();
+        try{
+            sim.run(limit);
+        } finally {
+            sim.flush();
+            long ns = Math.max(1, System.nanoTime() - t0);
+            System.err.println(String.format("%,d instructions in %.3f ms, %,.0f instructions/s%s",
+                    sim.executed, ns/1e6, sim.executed / (ns/1e9), sim.halted ? "" : " (not halted, pc " + sim.pc + ")"));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+import java.io.PrintStream;
+import jdk.jfr.*;
+
+/*
+  Stats.java
+  Counters and timers behind the --stats option of Pass1, Pass2 and TwoPassMacroProcessor.
+
+  A pass keeps a Stats reference that is null unless --stats is given, so with the feature
+  off the hot path pays one null check per probe. Counters are plain long increments;
+  timers add System.nanoTime() differences and count the timed calls. At the end of a run
+  report() prints the summary and commit() emits one JFR event per metric:
+
+    assembler.Phase   one per pass (start/end of pass 1, pass 2, macro pass 1/2), with duration
+    assembler.Metric  scope ("pass1", "pass2", "macro"), metric name, count, total time
+
+  Stats is not thread-safe: the --parallel passes give every chunk its own Stats and add
+  them up afterwards, so there a timer is the sum over threads and may exceed the pass time.
+
+  Record them with e.g. java -XX:StartFlightRecording=filename=asm.jfr Pass1 --stats src.asm
+  and read them with: jfr print --categories Assembler asm.jfr
+*/
+
+public class Stats {
+
+    @Name("assembler.Metric")
+    @Label("Assembler Metric")
+    @Category("Assembler")
+    static class Metric extends Event {
+        @Label("Scope") String scope;
+        @Label("Metric") String metric;
+        @Label("Count") long count;
+        @Label("Time") @Timespan(Timespan.NANOSECONDS) long nanos;
+    }
+
+    @Name("assembler.Phase")
+    @Label("Assembler Phase")
+    @Category("Assembler")
+    static class Phase extends Event {
+        @Label("Scope") String scope;
+        @Label("Phase") String phase;
+    }
+
+    final String scope;
+    final String[] names;
+    final long[] count, nanos;
+    private final Phase[] phases;
+
+    // names[i] is the metric with index i; each pass declares its indices as constants
+    Stats(String scope, String... names){
+        this.scope = scope;
+        this.names = names;
+        count = new long[names.length];
+        nanos = new long[names.length];
+        phases = new Phase[names.length];
+    }
+
+    void inc(int i){ count[i]++; }
+
+    void add(int i, long n){ count[i] += n; }
+
+    void add(int i, long n, long ns){
+        count[i] += n;
+        nanos[i] += ns;
+    }
+
+    // adds the counts and times of other, e.g. the per-thread Stats of a parallel run
+    void add(Stats other){
+        for(int i=0;i<count.length;i++){
+            count[i] += other.count[i];
+            nanos[i] += other.nanos[i];
+        }
+    }
+
+    // one timed call that started at t0 = System.nanoTime()
+    void time(int i, long t0){
+        nanos[i] += System.nanoTime() - t0;
+        count[i]++;
+    }
+
+    // a phase is a timer that is also a JFR event with a duration
+    void begin(int i){
+        Phase p = new Phase();
+        p.scope = scope;
+        p.phase = names[i];
+        p.begin();
+        phases[i] = p;
+        nanos[i] -= System.nanoTime();
+    }
+
+    void end(int i){
+        nanos[i] += System.nanoTime();
+        count[i]++;
+        Phase p = phases[i];
+        if(p != null){
+            p.commit();
+            phases[i] = null;
+        }
+    }
+
+    void report(PrintStream out){
+        out.println("-- " + scope + " stats");
+        for(int i=0;i<names.length;i++){
+            if(nanos[i] != 0) out.println(String.format("  %-22s %,14d  %10.3f ms", names[i], count[i], nanos[i]/1e6));
+            else out.println(String.format("  %-22s %,14d", names[i], count[i]));
+        }
+    }
+
+    void commit(){
+        for(int i=0;i<names.length;i++){
+            Metric m = new Metric();
+            if(!m.isEnabled()) return;
+            m.scope = scope;
+            m.metric = names[i];
+            m.count = count[i];
+            m.nanos = nanos[i];
+            m.commit();
+        }
+    }
+}
@@ -0,0 +1,182 @@
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/*
+  SymbolTable.java
+  Pass1's symbol table, sized for programs with millions of labels. Symbols are numbered
+  1, 2, ... in order of first appearance (the index in SYMTAB.txt and in (S,n) operands).
+
+  No object per symbol: names are stored back to back in one byte arena (one byte per char
+  when every char fits in Latin-1, else two), and name position, length, hash, address and
+  length field (and the line of first appearance, for diagnostics) live in parallel int
+  arrays indexed by symbol. Lookup is open addressing with linear probing over a slot array
+  of (symbol index, hash) int pairs, index 0 = empty, kept at most half full; the hash next
+  to the index lets a probe skip other names without touching their arrays. With 2M symbols
+  bench/SymbolTableBench.java measures 47.7 bytes per symbol including the name and growth
+  slack (44 before the line array), against 141 for a LinkedHashMap entry, Symbol object
+  and String.
+
+  find(char[], s, e) looks a name up in a slice of Pass1's tokenizer buffer, so a String is
+  built only when add enters a new symbol.
+
+  truncate(n) forgets the symbols after n (IncrementalAssembler rewinds with it): they are
+  the most recently inserted, so clearing their slots in reverse order leaves every other
+  probe chain intact.
+*/
+
+public class SymbolTable {
+    static final int WIDE = 1<<31; // nameLen flag: two bytes per char
+
+    byte[] names = new byte[1<<10];
+    int namesSize;
+    int[] nameAt = new int[64], nameLen = new int[64], hash = new int[64];
+    int[] addr = new int[64], length = new int[64];
+    int[] line = new int[64]; // source line of first appearance, 0 = unknown (for diagnostics)
+    int size; // symbols 1..size
+    int[] slots = new int[2*128]; // pairs: index, hash
+
+    static int mix(int h){
+        return h ^ (h >>> 16);
+    }
+
+    static int hash(CharSequence s){
+        if(s instanceof String) return mix(s.hashCode()); // same polynomial, cached in the String
+        int h = 0;
+        for(int i=0;i<s.length();i++) h = 31*h + s.charAt(i);
+        return mix(h);
+    }
+
+    int size(){ return size; }
+
+    int addr(int i){ return addr[i]; }
+
+    void setAddr(int i, int a){ addr[i] = a; }
+
+    int length(int i){ return length[i]; }
+
+    void setLength(int i, int n){ length[i] = n; }
+
+    int line(int i){ return line[i]; }
+
+    void setLine(int i, int n){ line[i] = n; }
+
+    // index of the symbol named by b[s..e), 0 if there is none; same hash as hash(CharSequence)
+    int find(char[] b, int s, int e){
+        int h = 0;
+        for(int k=s;k<e;k++) h = 31*h + b[k];
+        h = mix(h);
+        int[] sl = slots;
+        int mask = sl.length-2;
+        for(int k = (h<<1) & mask; ; k = (k+2) & mask){
+            int i = sl[k];
+            if(i == 0) return 0;
+            if(sl[k+1] == h && same(i, b, s, e)) return i;
+        }
+    }
+
+    private boolean same(int i, char[] c, int s, int e){
+        int n = nameLen[i] & ~WIDE;
+        if(n != e-s) return false;
+        byte[] b = names;
+        int p = nameAt[i];
+        if((nameLen[i] & WIDE) == 0){
+            for(int k=0;k<n;k++) if((b[p+k] & 0xff) != c[s+k]) return false;
+        } else {
+            for(int k=0;k<n;k++) if((char)((b[p+2*k] & 0xff) << 8 | (b[p+2*k+1] & 0xff)) != c[s+k]) return false;
+        }
+        return true;
+    }
+
+    // index of the symbol with this name, 0 if there is none
+    int find(CharSequence name){
+        int h = hash(name);
+        int[] sl = slots;
+        int mask = sl.length-2;
+        for(int k = (h<<1) & mask; ; k = (k+2) & mask){
+            int i = sl[k];
+            if(i == 0) return 0;
+            if(sl[k+1] == h && same(i, name)) return i;
+        }
+    }
+
+    private boolean same(int i, CharSequence name){
+        int n = nameLen[i] & ~WIDE;
+        if(n != name.length()) return false;
+        byte[] b = names;
+        int p = nameAt[i];
+        if((nameLen[i] & WIDE) == 0){
+            for(int k=0;k<n;k++) if((b[p+k] & 0xff) != name.charAt(k)) return false;
+        } else {
+            for(int k=0;k<n;k++) if((char)((b[p+2*k] & 0xff) << 8 | (b[p+2*k+1] & 0xff)) != name.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    // Enters a new symbol (the caller has checked find) with address -1 and length 1
+    int add(String name){
+        int i = ++size;
+        if(i == addr.length){
+            int cap = addr.length*2;
+            nameAt = Arrays.copyOf(nameAt, cap);
+            nameLen = Arrays.copyOf(nameLen, cap);
+            hash = Arrays.copyOf(hash, cap);
+            addr = Arrays.copyOf(addr, cap);
+            length = Arrays.copyOf(length, cap);
+            line = Arrays.copyOf(line, cap);
+        }
+        int n = name.length();
+        boolean wide = false;
+        for(int k=0;k<n && !wide;k++) wide = name.charAt(k) > 0xff;
+        int bytes = wide ? 2*n : n;
+        if(namesSize + bytes > names.length) names = Arrays.copyOf(names, Math.max(names.length*2, namesSize + bytes));
+        if(wide){
+            for(int k=0;k<n;k++){
+                names[namesSize+2*k] = (byte)(name.charAt(k) >> 8);
+                names[namesSize+2*k+1] = (byte)name.charAt(k);
+            }
+        } else {
+            for(int k=0;k<n;k++) names[namesSize+k] = (byte)name.charAt(k);
+        }
+        nameAt[i] = namesSize;
+        nameLen[i] = wide ? n | WIDE : n;
+        namesSize += bytes;
+        hash[i] = hash(name);
+        addr[i] = -1;
+        length[i] = 1;
+        line[i] = 0;
+        if(4*size > slots.length) rehash(slots.length*2);
+        else insert(i);
+        return i;
+    }
+
+    private void insert(int i){
+        int mask = slots.length-2;
+        int k = (hash[i]<<1) & mask;
+        while(slots[k] != 0) k = (k+2) & mask;
+        slots[k] = i;
+        slots[k+1] = hash[i];
+    }
+
+    private void rehash(int capacity){
+        slots = new int[capacity];
+        for(int i=1;i<=size;i++) insert(i); // in index order, see truncate
+    }
+
+    String name(int i){
+        int n = nameLen[i] & ~WIDE;
+        if((nameLen[i] & WIDE) == 0) return new String(names, nameAt[i], n, StandardCharsets.ISO_8859_1);
+        return new String(names, nameAt[i], 2*n, StandardCharsets.UTF_16BE);
+    }
+
+    // Drops symbols n+1..size
+    void truncate(int n){
+        int mask = slots.length-2;
+        for(; size > n; size--){
+            int k = (hash[size]<<1) & mask;
+            while(slots[k] != size) k = (k+2) & mask;
+            slots[k] = 0;
+            slots[k+1] = 0;
+            namesSize = nameAt[size];
+        }
+    }
+}
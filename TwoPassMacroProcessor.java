@@ -0,0 +1,577 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  TwoPassMacroProcessor.java
+  Usage:
+    javac TwoPassMacroProcessor.java
+    java TwoPassMacroProcessor                      (built-in sample, prints MNT/MDT/expansion)
+    java TwoPassMacroProcessor input.asm [out.asm]  (expanded code to out.asm or stdout)
+    java TwoPassMacroProcessor - [out.asm]          (reads stdin; macros must be defined before use)
+    java TwoPassMacroProcessor --stats input.asm [out.asm]   (counters and timers on stderr, see Stats.java)
+    java TwoPassMacroProcessor --fail-fast input.asm [out.asm]   (stop at the first error, see Diagnostics.java)
+
+  From the command line, a call nested too deep or a recursive call is reported with its
+  line and skipped, and a MACRO without MEND is reported at the end; all on stderr, exit
+  status 1. The file and stream passes take the Diagnostics to report into and the source
+  name as parameters; the list-based pass1/pass2 have none and throw IllegalStateException.
+
+  For files, pass1 reads the source once to collect MNT/MDT and pass2 reads it again,
+  expanding line by line into the output. Only the macro definitions are held in memory.
+*/
+
+public class TwoPassMacroProcessor {
+
+    // --stats; null when off. Expanders pick it up when they are created.
+    static Stats stats;
+
+    // Stats indices
+    static final int ST_PASS1 = 0, ST_PASS2 = 1, ST_DEFINITIONS = 2, ST_LINES_IN = 3, ST_MNT_LOOKUPS = 4,
+            ST_CALLS = 5, ST_BINDINGS = 6, ST_LINES_OUT = 7;
+
+    static Stats newStats() {
+        return new Stats("macro", "pass 1", "pass 2", "definitions", "lines in", "MNT lookups",
+                "macro calls", "argument bindings", "lines emitted");
+    }
+
+    // Macro Name Table Entry
+    static class MNTEntry {
+        String name;
+        int mdtIndex;
+        String[] formals = new String[0];          // formal parameters from the prototype, in order
+        List<Template> body = new ArrayList<>();   // MDT lines of this macro, compiled in pass1
+
+        MNTEntry(String name, int mdtIndex) {
+            this.name = name;
+            this.mdtIndex = mdtIndex;
+        }
+    }
+
+    // One macro body line compiled at definition time:
+    // text[0] arg[slot[0]] text[1] arg[slot[1]] ... text[n]
+    static class Template {
+        final String[] text;
+        final int[] slot;
+
+        Template(String[] text, int[] slot) {
+            this.text = text;
+            this.slot = slot;
+        }
+
+        // Splits line at every occurrence of a formal; the longest formal wins at a
+        // given position, so &ARG1 does not match inside &ARG10.
+        static Template compile(String line, String[] formals) {
+            List<String> text = new ArrayList<>();
+            List<Integer> slot = new ArrayList<>();
+            int from = 0, i = 0;
+            while (i < line.length()) {
+                int best = -1;
+                for (int f = 0; f < formals.length; f++) {
+                    String formal = formals[f];
+                    if (line.startsWith(formal, i) && (best < 0 || formal.length() >= formals[best].length())) best = f;
+                }
+                if (best < 0) {
+                    i++;
+                    continue;
+                }
+                text.add(line.substring(from, i));
+                slot.add(best);
+                i += formals[best].length();
+                from = i;
+            }
+            text.add(line.substring(from));
+            int[] slots = new int[slot.size()];
+            for (int k = 0; k < slots.length; k++) slots[k] = slot.get(k);
+            return new Template(text.toArray(new String[0]), slots);
+        }
+
+        void expand(String[] actuals, StringBuilder out) {
+            out.append(text[0]);
+            for (int k = 0; k < slot.length; k++) {
+                out.append(actuals[slot[k]]).append(text[k + 1]);
+            }
+        }
+    }
+
+    // Formal parameter names of a prototype line such as "INCR &ARG1,&ARG2"
+    static String[] parseFormals(String prototypeLine) {
+        String[] protoTokens = prototypeLine.split("\\s+");
+        if (protoTokens.length < 2) return new String[0];
+        List<String> formals = new ArrayList<>();
+        for (String f : protoTokens[1].split(",")) {
+            f = f.trim();
+            if (!f.isEmpty()) formals.add(f);
+        }
+        return formals.toArray(new String[0]);
+    }
+
+    // Hashed MNT index, built once after pass1. Looks up the first token of a line
+    // in place, so lines that are not macro calls cost one hash and no allocation.
+    static class MacroIndex {
+        MNTEntry[] slots;
+        int mask;
+        int size;
+
+        MacroIndex(List<MNTEntry> MNT) {
+            int cap = 16;
+            while (cap < MNT.size() * 2) cap <<= 1;
+            slots = new MNTEntry[cap];
+            mask = cap - 1;
+            for (MNTEntry e : MNT) add(e);
+        }
+
+        // first definition wins, as with the linear MNT scan
+        void add(MNTEntry e) {
+            if ((size + 1) * 2 > slots.length) grow();
+            int i = hash(e.name, 0, e.name.length()) & mask;
+            while (slots[i] != null && !slots[i].name.equals(e.name)) i = (i + 1) & mask;
+            if (slots[i] == null) {
+                slots[i] = e;
+                size++;
+            }
+        }
+
+        private void grow() {
+            MNTEntry[] old = slots;
+            slots = new MNTEntry[old.length * 2];
+            mask = slots.length - 1;
+            for (MNTEntry e : old) {
+                if (e == null) continue;
+                int i = hash(e.name, 0, e.name.length()) & mask;
+                while (slots[i] != null) i = (i + 1) & mask;
+                slots[i] = e;
+            }
+        }
+
+        static int hash(CharSequence s, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) h = 31 * h + s.charAt(i);
+            return h ^ (h >>> 16);
+        }
+
+        // entry whose name equals line[0, end), or null
+        MNTEntry find(CharSequence line, int end) {
+            int i = hash(line, 0, end) & mask;
+            for (MNTEntry e = slots[i]; e != null; e = slots[i = (i + 1) & mask]) {
+                if (e.name.length() == end && sameChars(e.name, line, end)) return e;
+            }
+            return null;
+        }
+
+        private static boolean sameChars(String name, CharSequence line, int n) {
+            for (int k = 0; k < n; k++) if (name.charAt(k) != line.charAt(k)) return false;
+            return true;
+        }
+    }
+
+    static boolean isBlank(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+
+    // End of the token starting at from, i.e. the tokens line.split("\\s+") would return for a trimmed line
+    static int tokenEnd(CharSequence line, int from) {
+        int i = from;
+        while (i < line.length() && !isBlank(line.charAt(i))) i++;
+        return i;
+    }
+
+    static boolean firstTokenIs(String line, int end, String word) {
+        return end == word.length() && line.startsWith(word);
+    }
+
+    // Binds the second token of a call line ("INCR A,B") to the macro's parameter positions.
+    // Missing actuals become "", extra ones are ignored.
+    static void bindActuals(String line, int nameEnd, String[] actuals) {
+        int i = nameEnd;
+        while (i < line.length() && isBlank(line.charAt(i))) i++;
+        int end = tokenEnd(line, i);
+        for (int k = 0; k < actuals.length; k++) {
+            if (i > end || (i == end && k > 0)) {
+                actuals[k] = "";
+                continue;
+            }
+            int comma = line.indexOf(',', i);
+            if (comma < 0 || comma > end) comma = end;
+            actuals[k] = line.substring(i, comma).trim();
+            i = comma + 1;
+        }
+    }
+
+    // MACRO ... MEND state machine shared by the list-based and the streaming passes.
+    // With record off it only recognises definitions so a second read can skip them.
+    static class Definitions {
+        final List<MNTEntry> MNT;
+        final List<String> MDT;
+        final boolean record;
+        boolean insideMacro = false;
+        MNTEntry current;     // macro whose body is being read
+        MNTEntry completed;   // set by accept() when a MEND finished a definition
+        int line;             // number of the line passed to accept(), set by the caller
+        int openedAt;         // line of the MACRO that is still open
+        final Diagnostics diag; // null = throw IllegalStateException instead
+        final String file;      // source name in diagnostics
+
+        Definitions(List<MNTEntry> MNT, List<String> MDT, boolean record, Diagnostics diag, String file) {
+            this.MNT = MNT;
+            this.MDT = MDT;
+            this.record = record;
+            this.diag = diag;
+            this.file = file;
+        }
+
+        // Takes one trimmed, non-empty line; returns false if it is a program line
+        boolean accept(String line) {
+            completed = null;
+            int end = tokenEnd(line, 0);
+
+            if (firstTokenIs(line, end, "MACRO")) {
+                insideMacro = true;
+                openedAt = this.line;
+                return true;
+            }
+            if (!insideMacro) return false;
+
+            if (firstTokenIs(line, end, "MEND")) {
+                if (record) MDT.add("MEND");
+                insideMacro = false;
+                completed = current;
+                current = null;
+            } else if (current == null) {
+                // Macro prototype line: e.g. INCR &ARG1,&ARG2
+                current = new MNTEntry(line.substring(0, end), record ? MDT.size() : -1);
+                if (record) {
+                    current.formals = parseFormals(line);
+                    MNT.add(current);
+                    MDT.add(line);
+                }
+            } else if (record) {
+                current.body.add(Template.compile(line, current.formals));
+                MDT.add(line);
+            }
+            return true;
+        }
+
+        // At end of input: a definition still open swallowed the rest of the source
+        void finish() {
+            if (!insideMacro) return;
+            String error = "MACRO " + (current != null ? current.name + " " : "") + "has no MEND";
+            if (diag == null) throw new IllegalStateException(error);
+            diag.error(file, openedAt, "M303", error);
+        }
+    }
+
+    // Receives expanded lines
+    interface LineSink {
+        void line(CharSequence line) throws IOException;
+    }
+
+    // Writes lines to a Writer (a file, or a Pipe sink via Channels.newWriter) without
+    // turning the expansion buffer into a String first.
+    static LineSink writerSink(Writer out) {
+        String nl = System.lineSeparator();
+        char[][] buf = {new char[256]};
+        return line -> {
+            int n = line.length();
+            if (buf[0].length < n) buf[0] = new char[Math.max(n, buf[0].length * 2)];
+            if (line instanceof StringBuilder) ((StringBuilder) line).getChars(0, n, buf[0], 0);
+            else line.toString().getChars(0, n, buf[0], 0);
+            out.write(buf[0], 0, n);
+            out.write(nl);
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean failFast = false;
+        while (args.length > 0 && args[0].startsWith("--")) {
+            if (args[0].equals("--stats")) stats = newStats();
+            else if (args[0].equals("--fail-fast")) failFast = true;
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        if (args.length > 0) {
+            Diagnostics diag = new Diagnostics(failFast);
+            try {
+                runFiles(args, diag);
+            } catch (Diagnostics.Failure e) {
+                diag.print(System.err);
+                System.exit(1);
+            }
+            if (stats != null) {
+                stats.report(System.err);
+                stats.commit();
+            }
+            diag.print(System.err);
+            if (diag.errors() > 0) System.exit(1);
+            return;
+        }
+
+        // Sample input program with macro definitions
+        String[] input = {
+            "MACRO",
+            "INCR &ARG1,&ARG2",
+            "LDA &ARG1",
+            "ADD &ARG2",
+            "STA &ARG1",
+            "MEND",
+            "START",
+            "INCR A,B",
+            "END"
+        };
+
+        List<MNTEntry> MNT = new ArrayList<>();
+        List<String> MDT = new ArrayList<>();
+        List<String> intermediateCode = new ArrayList<>();
+
+        pass1(input, MNT, MDT, intermediateCode);
+        List<String> expandedCode = pass2(MNT, MDT, intermediateCode);
+
+        System.out.println("MNT:");
+        for (MNTEntry e : MNT) {
+            System.out.println(e.name + " -> MDT index: " + e.mdtIndex);
+        }
+        System.out.println("\nMDT:");
+        for (int i = 0; i < MDT.size(); i++) {
+            System.out.println(i + ": " + MDT.get(i));
+        }
+        System.out.println("\nIntermediate Code:");
+        for (String line : intermediateCode) {
+            System.out.println(line);
+        }
+        System.out.println("\nExpanded Code:");
+        for (String line : expandedCode) {
+            System.out.println(line);
+        }
+    }
+
+    // java TwoPassMacroProcessor <input|-> [output]
+    static void runFiles(String[] args, Diagnostics diag) throws IOException {
+        String file = args[0].equals("-") ? "<stdin>" : args[0];
+        Writer out = args.length > 1
+                ? new BufferedWriter(new FileWriter(args[1]), 1 << 16)
+                : new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        List<MNTEntry> MNT = new ArrayList<>();
+        List<String> MDT = new ArrayList<>();
+        try {
+            if (args[0].equals("-")) {
+                // standard input can only be read once: macros must be defined before use
+                if (stats != null) stats.begin(ST_PASS2);
+                processStream(new BufferedReader(new InputStreamReader(System.in)), out, MNT, MDT, MAX_DEPTH, false, diag, file);
+                if (stats != null) stats.end(ST_PASS2);
+            } else {
+                if (stats != null) stats.begin(ST_PASS1);
+                try (BufferedReader in = new BufferedReader(new FileReader(args[0]), 1 << 16)) {
+                    pass1(in, MNT, MDT, diag, file);
+                }
+                if (stats != null) stats.end(ST_PASS1);
+                if (stats != null) stats.begin(ST_PASS2);
+                try (BufferedReader in = new BufferedReader(new FileReader(args[0]), 1 << 16)) {
+                    pass2(in, out, MNT, MAX_DEPTH, false, diag, file);
+                }
+                if (stats != null) stats.end(ST_PASS2);
+            }
+            if (stats != null) stats.add(ST_DEFINITIONS, MNT.size());
+        } finally {
+            out.flush();
+            if (args.length > 1) out.close();
+        }
+    }
+
+    static void pass1(String[] input, List<MNTEntry> MNT, List<String> MDT, List<String> intermediateCode) {
+        Definitions defs = new Definitions(MNT, MDT, true, null, null);
+
+        for (String line : input) {
+            line = line.trim();
+            if (line.equals("")) continue;
+
+            if (!defs.accept(line)) intermediateCode.add(line);
+        }
+    }
+
+    // File pass 1: collects the macro definitions only; program lines are not kept.
+    // Problems go to diag under the source name file.
+    static void pass1(BufferedReader in, List<MNTEntry> MNT, List<String> MDT, Diagnostics diag, String file) throws IOException {
+        Definitions defs = new Definitions(MNT, MDT, true, diag, file);
+        String line;
+        while ((line = in.readLine()) != null) {
+            defs.line++;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            defs.accept(line);
+        }
+        defs.finish();
+    }
+
+    // File pass 2: re-reads the source, skips the definitions and streams the expansion to out
+    static void pass2(BufferedReader in, Writer out, List<MNTEntry> MNT, int maxDepth, boolean allowRecursion,
+                      Diagnostics diag, String file) throws IOException {
+        pass2(in, writerSink(out), MNT, maxDepth, allowRecursion, diag, file);
+    }
+
+    static void pass2(BufferedReader in, LineSink sink, List<MNTEntry> MNT, int maxDepth, boolean allowRecursion,
+                      Diagnostics diag, String file) throws IOException {
+        Definitions defs = new Definitions(null, null, false, diag, file);
+        Expander ex = new Expander(new MacroIndex(MNT), maxDepth, allowRecursion, diag, file);
+        String line;
+        while ((line = in.readLine()) != null) {
+            ex.lineNo++;
+            line = line.trim();
+            if (line.isEmpty() || defs.accept(line)) continue;
+            ex.expand(line, sink);
+        }
+    }
+
+    // Single read of a source that cannot be re-read (stdin, a pipe): definitions and expansion
+    // are interleaved, so a macro can only be called after its MEND.
+    static void processStream(BufferedReader in, Writer out, List<MNTEntry> MNT, List<String> MDT,
+                              int maxDepth, boolean allowRecursion, Diagnostics diag, String file) throws IOException {
+        processStream(in, writerSink(out), MNT, MDT, maxDepth, allowRecursion, diag, file);
+    }
+
+    static void processStream(BufferedReader in, LineSink sink, List<MNTEntry> MNT, List<String> MDT,
+                              int maxDepth, boolean allowRecursion, Diagnostics diag, String file) throws IOException {
+        Definitions defs = new Definitions(MNT, MDT, true, diag, file);
+        MacroIndex index = new MacroIndex(MNT);
+        Expander ex = new Expander(index, maxDepth, allowRecursion, diag, file);
+        String line;
+        while ((line = in.readLine()) != null) {
+            ex.lineNo = ++defs.line;
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            if (defs.accept(line)) {
+                if (defs.completed != null) index.add(defs.completed);
+                continue;
+            }
+            ex.expand(line, sink);
+        }
+        defs.finish();
+    }
+
+    // Default limit on macro call nesting in pass2
+    static final int MAX_DEPTH = 64;
+
+    // One active macro call on the expansion stack
+    static class Frame {
+        MNTEntry macro;
+        String[] actuals = new String[0];
+        int pc; // next body line to expand
+    }
+
+    // Expands macro calls, including calls that appear in macro bodies, one source line at a time.
+    // Nested calls are handled with an explicit stack of at most maxDepth frames, so memory
+    // stays bounded by the deepest call chain. A macro that calls itself, directly or through
+    // other macros, is rejected unless allowRecursion is set; then only maxDepth stops it.
+    static class Expander {
+        final MacroIndex index;
+        final int maxDepth;
+        final boolean allowRecursion;
+        final StringBuilder out = new StringBuilder(128);
+        final Stats stats = TwoPassMacroProcessor.stats;
+        final Diagnostics diag; // null = throw IllegalStateException instead
+        final String file;      // source name in diagnostics
+        int lineNo; // source line being expanded, for diagnostics
+        Frame[] stack;
+
+        Expander(MacroIndex index, int maxDepth, boolean allowRecursion, Diagnostics diag, String file) {
+            this.index = index;
+            this.maxDepth = maxDepth;
+            this.allowRecursion = allowRecursion;
+            this.diag = diag;
+            this.file = file;
+            this.stack = new Frame[Math.max(1, Math.min(maxDepth, 16))];
+        }
+
+        void expand(String line, LineSink sink) throws IOException {
+            // Check if this line is a macro call
+            int nameEnd = tokenEnd(line, 0);
+            MNTEntry macroEntry = index.find(line, nameEnd);
+            if (stats != null) {
+                stats.inc(ST_LINES_IN);
+                stats.inc(ST_MNT_LOOKUPS);
+            }
+            if (macroEntry == null) {
+                // Normal line, just copy
+                sink.line(line);
+                if (stats != null) stats.inc(ST_LINES_OUT);
+                return;
+            }
+
+            // Macro call detected: push it and expand until the stack is empty again
+            int depth = 0;
+            push(depth++, macroEntry, line, nameEnd);
+            while (depth > 0) {
+                Frame top = stack[depth - 1];
+                if (top.pc == top.macro.body.size()) {
+                    depth--;
+                    continue;
+                }
+                out.setLength(0);
+                top.macro.body.get(top.pc++).expand(top.actuals, out);
+
+                int innerEnd = tokenEnd(out, 0);
+                MNTEntry inner = index.find(out, innerEnd);
+                if (stats != null) stats.inc(ST_MNT_LOOKUPS);
+                if (inner == null) {
+                    sink.line(out);
+                    if (stats != null) stats.inc(ST_LINES_OUT);
+                    continue;
+                }
+                String error = null, code = null;
+                if (depth >= maxDepth) {
+                    error = "macro nesting deeper than " + maxDepth + ": " + chain(depth, inner);
+                    code = "M301";
+                } else if (!allowRecursion) {
+                    for (int k = 0; k < depth; k++) {
+                        if (stack[k].macro == inner) {
+                            error = "recursive macro call: " + chain(depth, inner);
+                            code = "M302";
+                            break;
+                        }
+                    }
+                }
+                if (error != null) {
+                    if (diag == null) throw new IllegalStateException(error);
+                    diag.error(file, lineNo, code, error + " (call skipped)");
+                    continue;
+                }
+                push(depth++, inner, out.toString(), innerEnd);
+            }
+        }
+
+        // Reuses the frame at position depth (growing the stack if needed) for a call of macro
+        private void push(int depth, MNTEntry macro, String callLine, int nameEnd) {
+            if (depth == stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+            Frame f = stack[depth];
+            if (f == null) f = stack[depth] = new Frame();
+            f.macro = macro;
+            f.pc = 0;
+            if (f.actuals.length < macro.formals.length) f.actuals = new String[macro.formals.length];
+            bindActuals(callLine, nameEnd, f.actuals);
+            if (stats != null) {
+                stats.inc(ST_CALLS);
+                stats.add(ST_BINDINGS, macro.formals.length);
+            }
+        }
+
+        private String chain(int depth, MNTEntry next) {
+            StringBuilder sb = new StringBuilder();
+            for (int k = 0; k < depth; k++) sb.append(stack[k].macro.name).append(" -> ");
+            return sb.append(next.name).toString();
+        }
+    }
+
+    static List<String> pass2(List<MNTEntry> MNT, List<String> MDT, List<String> intermediateCode) {
+        return pass2(MNT, MDT, intermediateCode, MAX_DEPTH, false);
+    }
+
+    static List<String> pass2(List<MNTEntry> MNT, List<String> MDT, List<String> intermediateCode,
+                              int maxDepth, boolean allowRecursion) {
+        List<String> expandedCode = new ArrayList<>();
+        Expander ex = new Expander(new MacroIndex(MNT), maxDepth, allowRecursion, null, null);
+        LineSink sink = line -> expandedCode.add(line.toString());
+        try {
+            for (String line : intermediateCode) ex.expand(line, sink);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen, the sink only adds to a list
+        }
+        return expandedCode;
+    }
+}
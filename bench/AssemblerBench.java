@@ -0,0 +1,149 @@
+import java.io.*;
+import java.util.*;
+
+/*
+  AssemblerBench.java
+  Pass1, Pass2 and end-to-end (Assembler) throughput on generated programs,
+  swept over program size, literal density and number of LTORG pools.
+  Units are source lines; B/line is allocation per source line.
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -cp out AssemblerBench                          (full sweep)
+    java -cp out AssemblerBench <lines> <density> <pools> (one configuration)
+*/
+
+public class AssemblerBench {
+
+    static void bench(int lines, double density, int pools) throws Exception {
+        String src = ProgramGenerator.assembly(lines, density, pools, 1);
+        long srcLines = src.chars().filter(c -> c=='\n').count();
+        System.out.println(String.format("-- %d lines, literal density %.2f, %d pools", srcLines, density, pools));
+
+        Bench.run("pass1", 5, 10, srcLines, "line", () -> {
+            Pass1 p = new Pass1();
+            p.run(new BufferedReader(new StringReader(src)));
+            return p.IC.size();
+        });
+
+        List<String> srcList = Arrays.asList(src.split("\n"));
+        int cores = Runtime.getRuntime().availableProcessors();
+        Bench.run("pass1 parallel x" + cores, 5, 10, srcLines, "line", () -> {
+            Pass1 p = new Pass1();
+            p.runParallel(srcList, cores);
+            return p.IC.size();
+        });
+
+        // source file: BufferedReader/FileReader against the memory-mapped byte scan
+        File asm = File.createTempFile("bench", ".asm");
+        asm.deleteOnExit();
+        try(Writer w = new FileWriter(asm)){ w.write(src); }
+        Bench.run("pass1 file, reader", 5, 10, srcLines, "line", () -> {
+            Pass1 p = new Pass1();
+            try(BufferedReader br = new BufferedReader(new FileReader(asm))){ p.run(br); }
+            return p.IC.size();
+        });
+        Bench.run("pass1 file, mmap", 5, 10, srcLines, "line", () -> {
+            Pass1 p = new Pass1();
+            p.runMapped(asm.getPath());
+            return p.IC.size();
+        });
+
+        Pass1 p1 = new Pass1();
+        p1.run(new BufferedReader(new StringReader(src)));
+        Bench.run("pass2", 5, 10, srcLines, "line", () -> {
+            Pass2 p2 = new Pass2();
+            p2.useTables(p1);
+            for(String ic : p1.IC) p2.translate(ic);
+            return p2.machine.size();
+        });
+
+        // IC file -> MACHINECODE file, serial against the chunked ForkJoin path
+        File ic = File.createTempFile("bench", ".IC.txt"), mc = File.createTempFile("bench", ".MC.txt");
+        ic.deleteOnExit(); mc.deleteOnExit();
+        try(PrintWriter w = new PrintWriter(new BufferedWriter(new FileWriter(ic)))){
+            for(String s : p1.IC) w.println(s);
+        }
+        Bench.run("pass2 file, serial", 3, 5, srcLines, "line", () -> {
+            Pass2 p2 = new Pass2();
+            p2.useTables(p1);
+            p2.readText(ic.getPath());
+            p2.writeMachineCode(mc.getPath(), null);
+            return mc.length();
+        });
+        Bench.run("pass2 file, streaming writer", 3, 5, srcLines, "line", () -> {
+            Pass2 p2 = new Pass2();
+            p2.useTables(p1);
+            try(MachineCodeWriter w = new MachineCodeWriter(mc.getPath(), null)){
+                p2.out = w;
+                p2.readMapped(ic.getPath());
+            }
+            return mc.length();
+        });
+        Bench.run("pass2 file, mmap", 3, 5, srcLines, "line", () -> {
+            Pass2 p2 = new Pass2();
+            p2.useTables(p1);
+            p2.readMapped(ic.getPath());
+            p2.writeMachineCode(mc.getPath(), null);
+            return mc.length();
+        });
+        Bench.run("pass2 file, parallel x" + cores, 3, 5, srcLines, "line", () -> {
+            Pass2 p2 = new Pass2();
+            p2.useTables(p1);
+            p2.generateParallel(ic.getPath(), mc.getPath(), null, cores);
+            return mc.length();
+        });
+
+        // loading the program: parse MACHINECODE text into words against mapping the object file
+        File obj = File.createTempFile("bench", ".obj");
+        obj.deleteOnExit();
+        Pass1 po = new Pass1();
+        po.image = new ObjectFile.Image();
+        po.run(new BufferedReader(new StringReader(src)));
+        Pass2 p2o = new Pass2();
+        p2o.useTables(po);
+        p2o.image = po.image;
+        for(String s : po.IC) p2o.translate(s);
+        ObjectFile.write(obj.getPath(), po, po.image);
+        System.out.println(String.format("   MACHINECODE.txt %,d bytes, object file %,d bytes", mc.length(), obj.length()));
+        Bench.run("load MACHINECODE.txt (parse)", 3, 5, srcLines, "line", () -> {
+            IntTable words = new IntTable();
+            int n = 0;
+            try(BufferedReader br = new BufferedReader(new FileReader(mc), 1<<16)){
+                for(String s; (s = br.readLine()) != null; ){
+                    String[] f = s.trim().split("\\s+");
+                    words.put(n++, ObjectFile.pack(Integer.parseInt(f[1]), Integer.parseInt(f[2]), Integer.parseInt(f[3])));
+                }
+            }
+            return n;
+        });
+        Bench.run("load object file (mmap)", 3, 5, srcLines, "line", () -> {
+            try(ObjectFile.Reader r = new ObjectFile.Reader(obj.getPath())){
+                int[] mem = new int[r.size()];
+                r.load(mem);
+                return mem.length;
+            }
+        });
+
+        Bench.run("end-to-end (Assembler)", 5, 10, srcLines, "line", () ->
+            new Assembler().assemble(new StringReader(src)).machineCode.size()
+        );
+        Bench.run("one-pass (backpatch)", 5, 10, srcLines, "line", () ->
+            OnePassAssembler.assemble(new BufferedReader(new StringReader(src))).codeOut.n
+        );
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length==3){
+            bench(Integer.parseInt(args[0]), Double.parseDouble(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        for(int lines : new int[]{10_000, 200_000}){
+            bench(lines, 0.2, 1);
+        }
+        bench(200_000, 0.0, 1);
+        bench(200_000, 0.6, 1);
+        bench(200_000, 0.2, 100);
+        bench(200_000, 0.2, 2_000);
+    }
+}
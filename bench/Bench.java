@@ -0,0 +1,44 @@
+import java.lang.management.ManagementFactory;
+
+/*
+  Bench.java
+  Small benchmark harness for the classes in this repo (plain Java, no external dependencies).
+  Each benchmark body runs for a number of warmup iterations, then measured iterations;
+  the report is the best and average time per iteration, throughput in units/s and
+  bytes allocated per unit (from the thread allocation counter of the measured iterations).
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -cp out <SomeBench>
+*/
+
+public class Bench {
+
+    interface Body {
+        long run() throws Exception; // returns a checksum so the JIT cannot drop the work
+    }
+
+    static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static long sink; // checksums accumulate here
+
+    // units = work items done by one iteration (lines, lookups, ...)
+    static double run(String name, int warmup, int iterations, long units, String unitName, Body body) throws Exception {
+        for(int i=0;i<warmup;i++) sink += body.run();
+        long best = Long.MAX_VALUE, total = 0;
+        long alloc0 = THREADS.getCurrentThreadAllocatedBytes();
+        for(int i=0;i<iterations;i++){
+            long t0 = System.nanoTime();
+            sink += body.run();
+            long t = System.nanoTime() - t0;
+            best = Math.min(best, t);
+            total += t;
+        }
+        double allocPerUnit = (THREADS.getCurrentThreadAllocatedBytes() - alloc0) / (double)iterations / units;
+        double perSec = units / (best / 1e9);
+        System.out.println(String.format("%-40s best %10.3f ms  avg %10.3f ms  %,15.0f %s/s  %10.1f B/%s",
+                name, best/1e6, total/1e6/iterations, perSec, unitName, allocPerUnit, unitName));
+        return perSec;
+    }
+}
@@ -0,0 +1,52 @@
+import java.io.*;
+
+/*
+  LiteralPoolBench.java
+  Pass1 on programs of the same size with a growing number of LTORG pools. Every pool has
+  its own literal map, dropped when the pool is placed, so the live map never holds more
+  than one pool and time and memory per line should stay flat as pools grow; only the
+  LITTAB itself grows, because a literal reused in a later pool is a new entry there.
+
+  Columns: literals = LITTAB entries, largest pool = most literals in one pool (the largest
+  map that was ever live), retained = heap still reachable from the Pass1 after the run.
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -cp out LiteralPoolBench [lines] [literalDensity]
+*/
+
+public class LiteralPoolBench {
+
+    static long usedHeap(){
+        Runtime rt = Runtime.getRuntime();
+        for(int i=0;i<3;i++) System.gc();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length>0 ? Integer.parseInt(args[0]) : 200_000;
+        double density = args.length>1 ? Double.parseDouble(args[1]) : 0.5;
+
+        for(int pools : new int[]{1, 10, 100, 1_000, 10_000}){
+            String src = ProgramGenerator.assembly(lines, density, pools, 1);
+            long srcLines = src.chars().filter(c -> c=='\n').count();
+            Bench.run(String.format("pass1, %,d pools", pools), 3, 5, srcLines, "line", () -> {
+                Pass1 p = new Pass1();
+                p.run(new BufferedReader(new StringReader(src)));
+                return p.litList.size();
+            });
+
+            long before = usedHeap();
+            Pass1 p = new Pass1();
+            p.run(new BufferedReader(new StringReader(src)));
+            long retained = usedHeap() - before;
+            int largest = 0;
+            for(int i=0;i<p.poolTable.size();i++){
+                int end = i+1<p.poolTable.size() ? p.poolTable.get(i+1) : p.litList.size()+1;
+                largest = Math.max(largest, end - p.poolTable.get(i));
+            }
+            System.out.println(String.format("    %,d literals, largest pool %d, retained %.1f MB (%.1f B/line), open pool map %d",
+                    p.litList.size(), largest, retained/1e6, retained/(double)srcLines, p.litMap.size()));
+        }
+    }
+}
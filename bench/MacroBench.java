@@ -0,0 +1,73 @@
+import java.util.*;
+
+/*
+  MacroBench.java
+  TwoPassMacroProcessor pass1 (definition scan), pass2 (expansion) and both together,
+  swept over the number of macros and the call nesting depth. Units are source lines,
+  except for the nested expansion runs, which count expanded lines.
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -cp out MacroBench                            (full sweep)
+    java -cp out MacroBench <lines> <macros> <depth>   (one configuration)
+*/
+
+public class MacroBench {
+
+    static void bench(int lines, int macros, int depth) throws Exception {
+        String[] src = ProgramGenerator.macroSource(lines, macros, depth, 1);
+        System.out.println(String.format("-- %d lines (%d program), %d macros, nesting depth %d", src.length, lines, macros, depth));
+
+        Bench.run("macro pass1", 5, 10, src.length, "line", () -> {
+            List<TwoPassMacroProcessor.MNTEntry> MNT = new ArrayList<>();
+            List<String> MDT = new ArrayList<>();
+            List<String> ic = new ArrayList<>();
+            TwoPassMacroProcessor.pass1(src, MNT, MDT, ic);
+            return ic.size();
+        });
+
+        List<TwoPassMacroProcessor.MNTEntry> MNT = new ArrayList<>();
+        List<String> MDT = new ArrayList<>();
+        List<String> ic = new ArrayList<>();
+        TwoPassMacroProcessor.pass1(src, MNT, MDT, ic);
+        Bench.run("macro pass2", 5, 10, src.length, "line", () ->
+            TwoPassMacroProcessor.pass2(MNT, MDT, ic).size()
+        );
+
+        Bench.run("macro end-to-end", 5, 10, src.length, "line", () -> {
+            List<TwoPassMacroProcessor.MNTEntry> mnt = new ArrayList<>();
+            List<String> mdt = new ArrayList<>();
+            List<String> code = new ArrayList<>();
+            TwoPassMacroProcessor.pass1(src, mnt, mdt, code);
+            return TwoPassMacroProcessor.pass2(mnt, mdt, code).size();
+        });
+    }
+
+    // deep (long call chains) and wide (many calls per body) nested expansion
+    static void nested(int calls, int depth, int width) throws Exception {
+        String[] src = ProgramGenerator.nestedMacroSource(calls, depth, width);
+        List<TwoPassMacroProcessor.MNTEntry> MNT = new ArrayList<>();
+        List<String> MDT = new ArrayList<>();
+        List<String> ic = new ArrayList<>();
+        TwoPassMacroProcessor.pass1(src, MNT, MDT, ic);
+        int expanded = TwoPassMacroProcessor.pass2(MNT, MDT, ic).size();
+        System.out.println(String.format("-- nested: %d calls, depth %d, width %d -> %d expanded lines", calls, depth, width, expanded));
+        Bench.run("macro pass2 (nested)", 5, 10, expanded, "line", () ->
+            TwoPassMacroProcessor.pass2(MNT, MDT, ic).size()
+        );
+    }
+
+    public static void main(String[] args) throws Exception {
+        if(args.length==3){
+            bench(Integer.parseInt(args[0]), Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        bench(100_000, 10, 1);
+        bench(100_000, 1_000, 1);
+        bench(100_000, 1_000, 4);
+        bench(100_000, 10_000, 1);
+        nested(50_000, 32, 1);
+        nested(1_000, 2, 1_000);
+        nested(1_000, 4, 10);
+    }
+}
@@ -0,0 +1,117 @@
+import java.util.*;
+
+/*
+  ProgramGenerator.java
+  Synthetic inputs for the benchmarks, deterministic for a given seed.
+
+    assembly(lines, literalDensity, pools, seed)
+      START/END program in the syntax of asm_input.txt. literalDensity is the fraction of
+      instructions with a ='n' operand, pools the number of LTORG-separated literal pools.
+
+    macroSource(lines, macros, depth, seed)
+      Input for TwoPassMacroProcessor: `macros` definitions with two parameters each, chained
+      so that a macro calls the next one until `depth` levels (depth 1 = no nested calls),
+      followed by a program of `lines` lines where every other line is a macro call.
+
+    nestedMacroSource(calls, depth, width)
+      Macros N0..N(depth-1) where each Ni body has one instruction and `width` calls of N(i+1),
+      followed by `calls` calls of N0; one call expands to about width^(depth-1) lines.
+      depth 32 width 1 is a deep chain, depth 2 width 1000 a wide one.
+
+  Usage (write a generated program to stdout):
+    java ProgramGenerator asm <lines> [literalDensity] [pools]
+    java ProgramGenerator macro <lines> [macros] [depth]
+*/
+
+public class ProgramGenerator {
+    static final String[] OPS = {"ADD", "SUB", "MULT", "MOVER", "MOVEM", "COMP", "DIV"};
+    static final String[] REGS = {"A", "B", "C", "D"};
+
+    static String assembly(int lines, double literalDensity, int pools, long seed){
+        Random rnd = new Random(seed);
+        int vars = Math.max(1, lines/20);
+        int poolEvery = Math.max(1, lines / Math.max(1, pools));
+        StringBuilder sb = new StringBuilder(lines*16);
+        List<Integer> labels = new ArrayList<>(); // BC targets: only labels actually written
+        sb.append("START 100\n");
+        for(int i=0;i<lines;i++){
+            if(i>0 && i%poolEvery==0 && pools>1){
+                sb.append("LTORG\n");
+                continue;
+            }
+            if(i%10==0){
+                sb.append('L').append(i).append(' ');
+                labels.add(i);
+            }
+            if(i%25==24){
+                sb.append("BC NZ, L").append(labels.get(rnd.nextInt(labels.size()))).append('\n');
+                continue;
+            }
+            sb.append(OPS[rnd.nextInt(OPS.length)]).append(' ').append(REGS[rnd.nextInt(REGS.length)]).append(", ");
+            if(rnd.nextDouble() < literalDensity) sb.append("='").append(rnd.nextInt(100)).append("'\n");
+            else sb.append('V').append(rnd.nextInt(vars)).append('\n');
+        }
+        sb.append("STOP\n");
+        for(int v=0;v<vars;v++){
+            if(v%2==0) sb.append('V').append(v).append(" DS 1\n");
+            else sb.append('V').append(v).append(" DC '").append(v%1000).append("'\n");
+        }
+        sb.append("END\n");
+        return sb.toString();
+    }
+
+    static String[] macroSource(int lines, int macros, int depth, long seed){
+        Random rnd = new Random(seed);
+        List<String> out = new ArrayList<>();
+        for(int m=0;m<macros;m++){
+            out.add("MACRO");
+            out.add("M" + m + " &ARG1,&ARG2");
+            out.add("MOVER &ARG1, &ARG2");
+            out.add("ADD &ARG1, ='1'");
+            // chain M(m) -> M(m+1) inside each group of `depth` macros
+            if(depth>1 && m%depth != depth-1 && m+1<macros) out.add("M" + (m+1) + " &ARG2,&ARG1");
+            out.add("MOVEM &ARG1, &ARG2");
+            out.add("MEND");
+        }
+        out.add("START 100");
+        for(int i=0;i<lines;i++){
+            if(i%2==0) out.add("M" + (depth>1 ? depth*rnd.nextInt(Math.max(1, macros/depth)) : rnd.nextInt(macros)) + " X" + (i%50) + ",Y" + (i%30));
+            else out.add(OPS[rnd.nextInt(OPS.length)] + " " + REGS[rnd.nextInt(REGS.length)] + ", X" + (i%50));
+        }
+        out.add("END");
+        return out.toArray(new String[0]);
+    }
+
+    static String[] nestedMacroSource(int calls, int depth, int width){
+        List<String> out = new ArrayList<>();
+        for(int d=0;d<depth;d++){
+            out.add("MACRO");
+            out.add("N" + d + " &X,&Y");
+            out.add("ADD &X, &Y");
+            if(d+1<depth) for(int w=0;w<width;w++) out.add("N" + (d+1) + " &Y,&X");
+            out.add("MEND");
+        }
+        out.add("START 100");
+        for(int i=0;i<calls;i++) out.add("N0 A" + (i%10) + ",B" + (i%7));
+        out.add("END");
+        return out.toArray(new String[0]);
+    }
+
+    public static void main(String[] args){
+        if(args.length<2){
+            System.out.println("Usage: java ProgramGenerator asm <lines> [literalDensity] [pools]");
+            System.out.println("       java ProgramGenerator macro <lines> [macros] [depth]");
+            return;
+        }
+        int lines = Integer.parseInt(args[1]);
+        if(args[0].equals("asm")){
+            double density = args.length>2 ? Double.parseDouble(args[2]) : 0.2;
+            int pools = args.length>3 ? Integer.parseInt(args[3]) : 1;
+            System.out.print(assembly(lines, density, pools, 1));
+        } else {
+            int macros = args.length>2 ? Integer.parseInt(args[2]) : 100;
+            int depth = args.length>3 ? Integer.parseInt(args[3]) : 1;
+            for(String s : macroSource(lines, macros, depth, 1)) System.out.println(s);
+        }
+    }
+}
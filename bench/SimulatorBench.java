@@ -0,0 +1,64 @@
+import java.io.*;
+
+/*
+  SimulatorBench.java
+  Simulator throughput in instructions per second on loop-heavy programs: the
+  LOOP SUB A, ='1' / BC NZ, LOOP countdown of asm_input.txt, and a loop body that
+  also multiplies, compares and stores. Each iteration starts from a fresh image.
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -cp out SimulatorBench [iterations_of_the_program_loop]
+*/
+
+public class SimulatorBench {
+
+    static int[] image(String src, int[] entry) throws IOException {
+        Pass1 p1 = new Pass1();
+        p1.image = new ObjectFile.Image();
+        p1.run(new BufferedReader(new StringReader(src)));
+        new Assembler().pass2(p1);
+        entry[0] = p1.image.entry;
+        return ObjectFile.memory(p1, p1.image, null);
+    }
+
+    static void bench(String name, String src) throws Exception {
+        int[] entry = new int[1];
+        int[] img = image(src, entry);
+        Simulator probe = new Simulator(img, entry[0]);
+        probe.run(Long.MAX_VALUE);
+        if(!probe.halted) throw new IllegalStateException(name + " did not halt");
+        Bench.run(name, 5, 10, probe.executed, "instr", () -> {
+            Simulator sim = new Simulator(img, entry[0]);
+            sim.run(Long.MAX_VALUE);
+            return sim.R[1];
+        });
+    }
+
+    public static void main(String[] args) throws Exception {
+        int count = args.length>0 ? Integer.parseInt(args[0]) : 50_000_000;
+        bench("countdown (SUB, BC)",
+                "START 100\n" +
+                "MOVER A, COUNT\n" +
+                "LOOP SUB A, ='1'\n" +
+                "BC NZ, LOOP\n" +
+                "STOP\n" +
+                "COUNT DC '" + count + "'\n" +
+                "END\n");
+        bench("arithmetic loop (7 instr)",
+                "START 100\n" +
+                "MOVER A, COUNT\n" +
+                "LOOP MOVER B, ACC\n" +
+                "ADD B, ='3'\n" +
+                "MULT B, ='1'\n" +
+                "COMP B, LIMIT\n" +
+                "MOVEM B, ACC\n" +
+                "SUB A, ='1'\n" +
+                "BC NZ, LOOP\n" +
+                "STOP\n" +
+                "COUNT DC '" + count/4 + "'\n" +
+                "ACC DC '0'\n" +
+                "LIMIT DC '1000'\n" +
+                "END\n");
+    }
+}
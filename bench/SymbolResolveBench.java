@@ -0,0 +1,43 @@
+import java.util.*;
+
+/*
+  SymbolResolveBench.java
+  Pass2 operand resolution with 1M symbols: the old Map<Integer,Integer> lookup
+  (getOrDefault, boxing the key) against the IntTable now used by Pass2.
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -Xmx2g -cp out SymbolResolveBench [symbols] [lookups]
+*/
+
+public class SymbolResolveBench {
+    public static void main(String[] args) throws Exception {
+        int symbols = args.length>0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int lookups = args.length>1 ? Integer.parseInt(args[1]) : 4_000_000;
+
+        Map<Integer, Integer> map = new HashMap<>();
+        IntTable table = new IntTable();
+        for(int i=1;i<=symbols;i++){
+            map.put(i, 200+i);
+            table.put(i, 200+i);
+        }
+
+        // operand stream as Pass1 would produce it: 1-based indices in no particular order
+        int[] ops = new int[lookups];
+        Random rnd = new Random(42);
+        for(int i=0;i<lookups;i++) ops[i] = 1 + rnd.nextInt(symbols);
+
+        System.out.println(symbols + " symbols, " + lookups + " operand resolutions");
+        double before = Bench.run("HashMap<Integer,Integer>.getOrDefault", 5, 10, lookups, "lookups", () -> {
+            long sum = 0;
+            for(int idx : ops) sum += map.getOrDefault(idx, 0);
+            return sum;
+        });
+        double after = Bench.run("IntTable.get", 5, 10, lookups, "lookups", () -> {
+            long sum = 0;
+            for(int idx : ops) sum += table.get(idx);
+            return sum;
+        });
+        System.out.println(String.format("speedup: %.1fx", after/before));
+    }
+}
@@ -0,0 +1,100 @@
+import java.util.*;
+
+/*
+  SymbolTableBench.java
+  Heap per symbol and insert/lookup speed of Pass1's symbol table with millions of labels:
+  the old LinkedHashMap<String,Symbol> plus ArrayList<Symbol> (one Symbol object and one
+  String per label) against SymbolTable (byte arena and parallel int arrays).
+  Heap is measured as used heap after a full GC with the table reachable, minus before.
+
+  Usage:
+    javac -d out *.java bench/*.java
+    java -Xmx4g -cp out SymbolTableBench [symbols]
+*/
+
+public class SymbolTableBench {
+    // the Symbol class Pass1 used before SymbolTable
+    static class Symbol { String name; int addr; int length; int index; Symbol(String n,int i){name=n; index=i; addr=-1; length=1;} }
+
+    static String name(int i){ return "LBL" + i; }
+
+    static long usedHeap(){
+        for(int i=0;i<3;i++) System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    static Object fillMap(int n){
+        Map<String, Symbol> symMap = new LinkedHashMap<>();
+        List<Symbol> symList = new ArrayList<>();
+        for(int i=1;i<=n;i++){
+            String name = name(i);
+            if(!symMap.containsKey(name)){
+                Symbol s = new Symbol(name, i);
+                s.addr = 100 + i;
+                symMap.put(name, s);
+                symList.add(s);
+            }
+        }
+        return new Object[]{symMap, symList};
+    }
+
+    static Object fillTable(int n){
+        SymbolTable t = new SymbolTable();
+        for(int i=1;i<=n;i++){
+            String name = name(i);
+            if(t.find(name) == 0) t.setAddr(t.add(name), 100 + i);
+        }
+        return t;
+    }
+
+    static void heap(String label, int n, java.util.function.IntFunction<Object> fill){
+        long before = usedHeap();
+        Object keep = fill.apply(n);
+        long after = usedHeap();
+        System.out.println(String.format("%-40s %,15d bytes  %8.1f B/symbol", label, after-before, (after-before)/(double)n));
+        if(keep.hashCode() == 42) System.out.println(); // keep reachable until measured
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length>0 ? Integer.parseInt(args[0]) : 2_000_000;
+        System.out.println(n + " symbols");
+        heap("heap, LinkedHashMap + ArrayList", n, SymbolTableBench::fillMap);
+        heap("heap, SymbolTable", n, SymbolTableBench::fillTable);
+
+        String[] names = new String[n];
+        for(int i=0;i<n;i++) names[i] = name(i+1);
+        Bench.run("insert, LinkedHashMap + ArrayList", 2, 5, n, "symbol", () -> {
+            Map<String, Symbol> symMap = new LinkedHashMap<>();
+            List<Symbol> symList = new ArrayList<>();
+            for(int i=0;i<n;i++){
+                Symbol s = new Symbol(names[i], i+1);
+                symMap.put(names[i], s);
+                symList.add(s);
+            }
+            return symList.size();
+        });
+        Bench.run("insert, SymbolTable", 2, 5, n, "symbol", () -> {
+            SymbolTable t = new SymbolTable();
+            for(int i=0;i<n;i++) t.add(names[i]);
+            return t.size();
+        });
+
+        Map<String, Symbol> symMap = new LinkedHashMap<>();
+        SymbolTable t = new SymbolTable();
+        for(int i=0;i<n;i++){
+            symMap.put(names[i], new Symbol(names[i], i+1));
+            t.add(names[i]);
+        }
+        Bench.run("lookup, LinkedHashMap", 2, 5, n, "lookup", () -> {
+            long sum = 0;
+            for(int i=0;i<n;i++) sum += symMap.get(names[i]).index;
+            return sum;
+        });
+        Bench.run("lookup, SymbolTable", 2, 5, n, "lookup", () -> {
+            long sum = 0;
+            for(int i=0;i<n;i++) sum += t.find(names[i]);
+            return sum;
+        });
+    }
+}